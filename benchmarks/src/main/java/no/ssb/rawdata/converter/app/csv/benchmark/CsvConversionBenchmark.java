@@ -0,0 +1,113 @@
+package no.ssb.rawdata.converter.app.csv.benchmark;
+
+import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.app.csv.SyntheticRawdataMessages;
+import no.ssb.rawdata.converter.core.convert.ConversionResult;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link CsvRawdataConverter#convert(RawdataMessage)} on synthetic rawdata messages.
+ *
+ * <p>Reports messages/s (throughput), per message latency percentiles (sample time) and rows/s (the
+ * <code>rows</code> aux counter). Run with <code>-prof gc</code> to get allocation per message; divide
+ * <code>gc.alloc.rate.norm</code> by the number of rows per message to get allocation per row.</p>
+ *
+ * <p>With pseudo enabled, the string columns col0 and col4 are intercepted by an HMAC-SHA256 based stand-in for
+ * the field pseudonymizer, which needs secrets that are not available outside a running app.</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvConversionBenchmark {
+
+    private static final int MESSAGE_POOL_SIZE = 64;
+
+    @Param({"10", "200"})
+    public int columns;
+
+    @Param({"single", "collection"})
+    public String recordType;
+
+    @Param({"false", "true"})
+    public boolean quoted;
+
+    @Param({"false", "true"})
+    public boolean pseudo;
+
+    @Param({"DEFAULT", "BYTE"})
+    public String tokenizer;
+
+    @Param({"1000"})
+    public int collectionRows;
+
+    private CsvRawdataConverter converter;
+    private List<RawdataMessage> messages;
+    private int rowsPerMessage;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        rowsPerMessage = "single".equals(recordType) ? 1 : collectionRows;
+        SyntheticRawdataMessages generator = new SyntheticRawdataMessages(columns, rowsPerMessage, recordType, quoted);
+        messages = generator.generate(MESSAGE_POOL_SIZE);
+
+        CsvRawdataConverterConfig config = new CsvRawdataConverterConfig();
+        config.getCsvSettings().put(CsvParserSettings.DELIMITERS, SyntheticRawdataMessages.DELIMITER);
+        config.getCsvSettings().put(CsvParserSettings.COLUMN_HEADERS_PRESENT, false);
+        config.setTokenizer(CsvRawdataConverterConfig.Tokenizer.from(tokenizer));
+
+        ValueInterceptorChain valueInterceptorChain = new ValueInterceptorChain();
+        FieldPathMatcher interceptedFields = FieldPathMatcher.NONE;
+        if (pseudo) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec("benchmark-secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            valueInterceptorChain.register((field, value) -> Base64.getEncoder().encodeToString(mac.doFinal(value.getBytes(StandardCharsets.UTF_8))));
+            interceptedFields = FieldPathMatcher.of(List.of("**/{" + SyntheticRawdataMessages.columnName(0) + "," + SyntheticRawdataMessages.columnName(4) + "}"));
+        }
+
+        converter = new CsvRawdataConverter(config, valueInterceptorChain, interceptedFields);
+        converter.init(messages.subList(0, 1));
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+        public long rows;
+    }
+
+    @Benchmark
+    public ConversionResult convert(RowCounter rowCounter) {
+        RawdataMessage message = messages.get(next++ & (MESSAGE_POOL_SIZE - 1));
+        ConversionResult result = converter.convert(message);
+        rowCounter.rows += rowsPerMessage;
+        return result;
+    }
+
+}
@@ -9,6 +9,10 @@ import no.ssb.rawdata.converter.util.MavenArtifactUtil;
 public class Application extends RawdataConverterApplication {
 
     public static void main(String[] args) {
+        if (Boolean.getBoolean(CdsTraining.TRAINING_PROPERTY)) {
+            CdsTraining.main(args);
+            return;
+        }
         log.info("rawdata-converter-transform-app-csv version: {}", MavenArtifactUtil.findArtifactVersion("no.ssb.rawdata.converter.app", "rawdata-converter-transform-app-csv").orElse("unknown"));
         Micronaut.run(Application.class, args);
     }
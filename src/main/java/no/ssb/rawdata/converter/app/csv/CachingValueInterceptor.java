@@ -0,0 +1,119 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.search.Search;
+import lombok.Value;
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size bounded, memoizing {@link ValueInterceptor} that sits in front of an expensive interceptor such as the
+ * field pseudonymizer.
+ *
+ * <p>Results are cached per field path and input value (using W-TinyLFU eviction). Only values that were
+ * actually transformed by the delegate are cached. A field path for which the delegate returns nearly all of the
+ * first lookups untouched is remembered as pass-through, and its values bypass the cache from then on. A single
+ * untouched value, e.g. one that a pseudo function leaves as is, does not turn off caching of the field.</p>
+ *
+ * <p>The cache only lives in memory for the lifetime of the converter job and is never persisted. Hit, miss
+ * and eviction counts are published as cache metrics, which are removed when the interceptor is closed.</p>
+ */
+public class CachingValueInterceptor implements ValueInterceptor, AutoCloseable {
+
+    /** Number of delegate lookups of a field path before deciding whether the field path is pass-through */
+    static final int PASS_THROUGH_SAMPLE_SIZE = 1000;
+
+    /** Min share of untouched values among the sampled lookups of a pass-through field path */
+    static final double PASS_THROUGH_MIN_SHARE = 0.95;
+
+    private final ValueInterceptor delegate;
+    private final Cache<Key, String> cache;
+    private final ConcurrentMap<String, PathStats> pathStats = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Collection<Meter> meters;
+
+    public CachingValueInterceptor(ValueInterceptor delegate, long maxSize, MeterRegistry meterRegistry, String cacheName, String jobName) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+          .maximumSize(maxSize)
+          .recordStats()
+          .build();
+
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName, "job", String.valueOf(jobName));
+            this.meters = Search.in(meterRegistry).tags("cache", cacheName, "job", String.valueOf(jobName)).meters();
+        }
+        else {
+            this.meters = List.of();
+        }
+    }
+
+    @Override
+    public String intercept(FieldDescriptor field, String value) {
+        if (value == null || value.isEmpty()) {
+            return delegate.intercept(field, value);
+        }
+        PathStats stats = pathStats.computeIfAbsent(field.getPath(), path -> new PathStats());
+        if (stats.passThrough) {
+            return delegate.intercept(field, value);
+        }
+
+        Key key = new Key(field.getPath(), value);
+        String result = cache.getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+
+        result = delegate.intercept(field, value);
+        stats.record(result == value);
+        if (result != value && result != null) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Delegate lookups of a field path, sampled until the field path is known to be pass-through or not
+     */
+    private static class PathStats {
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final AtomicInteger untouched = new AtomicInteger();
+        private volatile boolean passThrough;
+
+        void record(boolean untouchedValue) {
+            if (lookups.get() >= PASS_THROUGH_SAMPLE_SIZE) {
+                return;
+            }
+            int untouchedCount = untouchedValue ? untouched.incrementAndGet() : untouched.get();
+            if (lookups.incrementAndGet() == PASS_THROUGH_SAMPLE_SIZE) {
+                passThrough = untouchedCount >= PASS_THROUGH_SAMPLE_SIZE * PASS_THROUGH_MIN_SHARE;
+            }
+        }
+    }
+
+    /**
+     * Remove the cache metrics of the job from the registry
+     */
+    @Override
+    public void close() {
+        meters.forEach(meterRegistry::remove);
+    }
+
+    @Value
+    private static class Key {
+        private final String path;
+        private final String value;
+    }
+
+}
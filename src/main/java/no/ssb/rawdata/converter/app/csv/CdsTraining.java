@@ -0,0 +1,89 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.runtime.Micronaut;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter.CsvRawdataConverterException;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.RecordType;
+import no.ssb.rawdata.converter.core.convert.ConversionResult;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.List;
+
+/**
+ * Training run for the class data sharing (AppCDS) archive of the docker image and the <code>appcds</code> maven
+ * profile.
+ *
+ * <p>Boots the application context with the <code>cds-training</code> environment and converts synthetic csv
+ * rawdata messages with both tokenizers and record types, so that the classes used at startup and on the
+ * conversion path end up in the archive. Exits with a non-zero status if the conversion fails.</p>
+ *
+ * <p>The archive is only used if the app is launched the same way as the training run: with the same JDK, the same
+ * jar path and <code>-jar</code>. The training run is therefore started through {@link Application} with the
+ * <code>cds.training</code> system property, e.g.
+ * <code>java -XX:ArchiveClassesAtExit=app-cds.jsa -Dcds.training=true -jar rawdata-converter-transform-app-csv.jar</code>.</p>
+ */
+@Slf4j
+public class CdsTraining {
+
+    /** System property that makes {@link Application#main(String[])} run the training instead of the app */
+    public static final String TRAINING_PROPERTY = "cds.training";
+
+    private static final int MESSAGES = 50;
+    private static final int COLUMNS = 12;
+    private static final int COLLECTION_ROWS = 100;
+
+    public static void main(String[] args) {
+        try (ApplicationContext context = Micronaut.build(args)
+          .mainClass(Application.class)
+          .environments("cds-training")
+          .start()) {
+            long rows = convertSyntheticMessages();
+            log.info("CDS training run converted {} csv lines", rows);
+        }
+        catch (Exception e) {
+            log.error("CDS training run failed", e);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Convert synthetic rawdata messages with each tokenizer and record type.
+     *
+     * @return the number of converted csv lines
+     */
+    public static long convertSyntheticMessages() {
+        long rows = 0;
+        for (CsvRawdataConverterConfig.Tokenizer tokenizer : CsvRawdataConverterConfig.Tokenizer.values()) {
+            for (RecordType recordType : RecordType.values()) {
+                CsvRawdataConverterConfig config = new CsvRawdataConverterConfig();
+                config.getCsvSettings().put(CsvParserSettings.DELIMITERS, SyntheticRawdataMessages.DELIMITER);
+                config.getCsvSettings().put(CsvParserSettings.COLUMN_HEADERS_PRESENT, false);
+                config.setTokenizer(tokenizer);
+
+                int rowsPerMessage = (recordType == RecordType.SINGLE) ? 1 : COLLECTION_ROWS;
+                List<RawdataMessage> messages = new SyntheticRawdataMessages(COLUMNS, rowsPerMessage, recordType.name().toLowerCase(), true)
+                  .generate(MESSAGES);
+                CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+                converter.init(messages.subList(0, 1));
+                for (RawdataMessage message : messages) {
+                    if (! converter.isConvertible(message)) {
+                        throw new CsvRawdataConverterException("Synthetic rawdata message is not convertible: " + message.position());
+                    }
+                    ConversionResult result = converter.convert(message);
+                    if (! result.getFailures().isEmpty()) {
+                        throw new CsvRawdataConverterException("Failed to convert synthetic rawdata message " + message.position(), result.getFailures().get(0));
+                    }
+                    rows += CsvSchemaAdapter.lineCountOf((GenericRecord) result.getGenericRecord().get(CsvRawdataConverter.FIELDNAME_CSV_DATA));
+                }
+            }
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,54 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process wide executors for concurrent conversion work. Shared by all converter jobs, so that the number of
+ * worker threads is bounded by the number of available cores regardless of the number of running jobs.
+ */
+final class ConversionExecutors {
+
+    private ConversionExecutors() {}
+
+    /**
+     * @return the fork/join pool used for parsing chunks of large csv entries in parallel
+     */
+    static ForkJoinPool parsePool() {
+        return ParsePoolHolder.POOL;
+    }
+
+    /**
+     * @return the bounded executor used for converting batches of rawdata messages concurrently
+     */
+    static ExecutorService batchExecutor() {
+        return BatchExecutorHolder.EXECUTOR;
+    }
+
+    private static class BatchExecutorHolder {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          runnable -> {
+              Thread thread = new Thread(runnable, "csv-convert-" + THREAD_COUNT.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+          });
+    }
+
+    private static class ParsePoolHolder {
+        private static final ForkJoinPool POOL = new ForkJoinPool(
+          Runtime.getRuntime().availableProcessors(),
+          pool -> {
+              ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+              thread.setName("csv-parse-" + thread.getPoolIndex());
+              return thread;
+          },
+          null,
+          false);
+    }
+
+}
@@ -0,0 +1,232 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process wide admission control of csv conversions, based on their estimated heap cost.
+ *
+ * <p>Before a rawdata message is converted, the heap needed for decoding its csv data is estimated from the
+ * size of the csv entries and their column count. The conversion is admitted once the estimated cost fits in
+ * the memory budget, alongside the conversions that are already in flight. Otherwise the converting thread
+ * waits, which applies backpressure to the job. Conversions are admitted in arrival order, and a conversion
+ * that alone exceeds the budget is admitted when nothing else is in flight. A conversion whose thread is
+ * interrupted while waiting gives up its turn, and fails.</p>
+ *
+ * <p>The estimated heap in use, the budget, the number of waiting conversions and the admission wait time are
+ * published as metrics.</p>
+ */
+@Singleton
+@Slf4j
+public class ConversionMemoryGovernor {
+
+    /** Admits every conversion immediately */
+    public static final ConversionMemoryGovernor UNLIMITED = new ConversionMemoryGovernor(0, null);
+
+    /** Assumed expansion of compressed csv data */
+    private static final int COMPRESSION_RATIO = 8;
+
+    /** Assumed average width in bytes of a csv field, used for estimating the number of lines */
+    private static final int AVG_FIELD_BYTES = 8;
+
+    /** Approximate heap cost of a decoded record, apart from its values */
+    private static final int RECORD_OVERHEAD_BYTES = 48;
+
+    /** Approximate heap cost of a decoded value, apart from its chars */
+    private static final int VALUE_OVERHEAD_BYTES = 40;
+
+    private final long budget;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition admissionChanged = lock.newCondition();
+    private final Timer waitTimer;
+
+    private long inUse;
+    private int waiting;
+    private long nextTicket;
+    private long admittedTicket;
+
+    /** Tickets of waiting conversions that were interrupted before their turn */
+    private final Set<Long> abandonedTickets = new HashSet<>();
+
+    @Inject
+    public ConversionMemoryGovernor(CsvRawdataConverterConfig converterConfig, MeterRegistry meterRegistry) {
+        this(converterConfig.getMemoryBudgetBytes(), meterRegistry);
+    }
+
+    /**
+     * @param budget max estimated heap in bytes of the conversions in flight. 0 disables admission control.
+     */
+    public ConversionMemoryGovernor(long budget, MeterRegistry meterRegistry) {
+        this.budget = budget;
+        if (meterRegistry == null || budget <= 0) {
+            this.waitTimer = null;
+            return;
+        }
+
+        log.info("CSV conversion memory budget: {} bytes", budget);
+        Gauge.builder("rawdata.converter.csv.memory.used", this, ConversionMemoryGovernor::inUse)
+          .description("Estimated heap in use by the csv conversions in flight")
+          .baseUnit("bytes")
+          .register(meterRegistry);
+        Gauge.builder("rawdata.converter.csv.memory.budget", () -> budget)
+          .description("Max estimated heap of the csv conversions in flight")
+          .baseUnit("bytes")
+          .register(meterRegistry);
+        Gauge.builder("rawdata.converter.csv.memory.waiting", this, ConversionMemoryGovernor::waiting)
+          .description("Number of csv conversions waiting for memory")
+          .register(meterRegistry);
+        this.waitTimer = Timer.builder("rawdata.converter.csv.memory.wait")
+          .description("Time spent waiting for memory before converting a rawdata message")
+          .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return budget > 0;
+    }
+
+    /**
+     * Estimate the heap needed for decoding a csv entry.
+     *
+     * @param dataBytes size of the csv entry
+     * @param columns number of csv columns
+     * @param compressed true if the csv entry is compressed
+     */
+    public static long estimateHeapBytes(int dataBytes, int columns, boolean compressed) {
+        long decodedBytes = compressed ? (long) dataBytes * COMPRESSION_RATIO : dataBytes;
+        int width = Math.max(columns, 1);
+        long lines = estimateLines(decodedBytes, width);
+        return decodedBytes * 2 + lines * (RECORD_OVERHEAD_BYTES + (long) width * VALUE_OVERHEAD_BYTES);
+    }
+
+    /**
+     * Estimate the number of lines of an uncompressed csv entry from its size, without scanning it.
+     *
+     * @param dataBytes size of the csv entry
+     * @param columns number of csv columns
+     */
+    public static long estimateLines(long dataBytes, int columns) {
+        return Math.max(1, dataBytes / ((long) Math.max(columns, 1) * AVG_FIELD_BYTES));
+    }
+
+    /**
+     * Wait until a conversion with the given estimated cost can be admitted.
+     *
+     * @return the admission, which must be closed once the conversion is done
+     * @throws CsvRawdataConverter.CsvRawdataConverterException if the thread is interrupted while waiting
+     */
+    public Admission admit(long estimatedBytes) {
+        if (budget <= 0) {
+            return Admission.NONE;
+        }
+
+        long cost = Math.min(Math.max(estimatedBytes, 0), budget);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            long ticket = nextTicket++;
+            if (ticket != admittedTicket || inUse + cost > budget) {
+                waiting++;
+                try {
+                    while (ticket != admittedTicket || inUse + cost > budget) {
+                        admissionChanged.await();
+                    }
+                }
+                catch (InterruptedException e) {
+                    abandon(ticket);
+                    Thread.currentThread().interrupt();
+                    throw new CsvRawdataConverter.CsvRawdataConverterException("Interrupted while waiting for csv conversion memory", e);
+                }
+                finally {
+                    waiting--;
+                }
+            }
+            advanceTicket();
+            inUse += cost;
+            admissionChanged.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        if (waitTimer != null) {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        return () -> release(cost);
+    }
+
+    /**
+     * Give up the turn of a waiting conversion, so that the conversions after it are not held up
+     */
+    private void abandon(long ticket) {
+        if (ticket == admittedTicket) {
+            advanceTicket();
+            admissionChanged.signalAll();
+        }
+        else {
+            abandonedTickets.add(ticket);
+        }
+    }
+
+    /**
+     * Pass the turn to the next conversion that is still waiting for it
+     */
+    private void advanceTicket() {
+        admittedTicket++;
+        while (abandonedTickets.remove(admittedTicket)) {
+            admittedTicket++;
+        }
+    }
+
+    private void release(long cost) {
+        lock.lock();
+        try {
+            inUse -= cost;
+            admissionChanged.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    long inUse() {
+        lock.lock();
+        try {
+            return inUse;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    int waiting() {
+        lock.lock();
+        try {
+            return waiting;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * An admitted conversion. Closing it returns its estimated cost to the budget.
+     */
+    @FunctionalInterface
+    public interface Admission extends AutoCloseable {
+        Admission NONE = () -> {};
+
+        @Override
+        void close();
+    }
+
+}
@@ -0,0 +1,207 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.context.env.Environment;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.naming.conventions.StringConvention;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.exceptions.HttpStatusException;
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Write;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.rawdata.api.RawdataClient;
+import no.ssb.rawdata.api.RawdataClientInitializer;
+import no.ssb.rawdata.api.RawdataConsumer;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter.CsvRawdataConverterException;
+import no.ssb.rawdata.converter.core.job.ConverterJobConfig;
+import no.ssb.service.provider.api.ProviderConfigurator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static no.ssb.rawdata.converter.util.RawdataMessageAdapter.posAndIdOf;
+
+/**
+ * Management endpoint that profiles the conversion of real rawdata messages.
+ *
+ * <p>Takes a job config, reads a number of messages from the start of the job's rawdata source topic and runs
+ * them through {@link CsvRawdataConverter#convert(RawdataMessage)}, using the same converter setup as the job
+ * itself. Nothing is written to the target storage. Reports throughput, per message latency percentiles,
+ * allocation per row and the time spent per conversion stage. Allocation is measured on the converting thread
+ * only, so csv data that is parsed in parallel is not accounted for.</p>
+ *
+ * <p>The endpoint reads production data, and is disabled and sensitive by default. Enable it with
+ * <code>endpoints.conversion-profile.enabled: true</code>. Profiling runs on the IO executor, and is limited to
+ * {@value #MAX_MESSAGES} messages. Encrypted rawdata sources are not supported, and are rejected up front.</p>
+ */
+@Endpoint(id = "conversion-profile", defaultEnabled = false, defaultSensitive = true)
+@RequiredArgsConstructor
+@Slf4j
+public class ConversionProfileEndpoint {
+
+    private static final int DEFAULT_MESSAGES = 100;
+    static final int MAX_MESSAGES = 10_000;
+    private static final int RECEIVE_TIMEOUT_SECONDS = 5;
+    private static final String[] STAGES = {"manifest", "parse", "build"};
+
+    private final DefaultRawdataConverterFactory converterFactory;
+    private final Environment environment;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param jobConfig the effective config of the job to profile, as json
+     * @param messages max number of rawdata messages to convert, at most {@value #MAX_MESSAGES}
+     */
+    @Write
+    @ExecuteOn(TaskExecutors.IO)
+    public ConversionProfile profile(Map<String, Object> jobConfig, @Nullable Integer messages) throws Exception {
+        int maxMessages = (messages == null) ? DEFAULT_MESSAGES : messages;
+        if (maxMessages < 1 || maxMessages > MAX_MESSAGES) {
+            throw new HttpStatusException(HttpStatus.BAD_REQUEST, "The number of messages must be between 1 and " + MAX_MESSAGES);
+        }
+        ConverterJobConfig converterJobConfig = objectMapper.convertValue(jobConfig, ConverterJobConfig.class);
+        ConverterJobConfig.RawdataSourceRef rawdataSource = converterJobConfig.getRawdataSource();
+        if (rawdataSource == null) {
+            throw new HttpStatusException(HttpStatus.BAD_REQUEST, "No rawdata source in job config");
+        }
+        if (rawdataSource.getEncryptionKeyId() != null || rawdataSource.getEncryptionSalt() != null) {
+            throw new HttpStatusException(HttpStatus.BAD_REQUEST, "Encrypted rawdata source " + rawdataSource.getName() + " is not supported");
+        }
+
+        List<RawdataMessage> rawdataMessages = receive(converterJobConfig, maxMessages);
+        if (rawdataMessages.isEmpty()) {
+            throw new CsvRawdataConverterException("No rawdata messages found in " + converterJobConfig.getRawdataSource().getTopic());
+        }
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CsvRawdataConverter converter = converterFactory.newRawdataConverter(converterJobConfig, converterFactory.converterConfigOf(converterJobConfig), registry);
+        converter.init(rawdataMessages);
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] latencies = new long[rawdataMessages.size()];
+        int converted = 0;
+        int failures = 0;
+        long allocatedBytes = 0;
+        long start = System.nanoTime();
+        for (RawdataMessage rawdataMessage : rawdataMessages) {
+            if (! converter.isConvertible(rawdataMessage)) {
+                continue;
+            }
+            long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            long messageStart = System.nanoTime();
+            try {
+                converter.convert(rawdataMessage);
+            }
+            catch (Exception e) {
+                log.warn("Failed to convert rawdata message at {}", posAndIdOf(rawdataMessage), e);
+                failures++;
+            }
+            latencies[converted++] = System.nanoTime() - messageStart;
+            allocatedBytes += threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long rows = (long) registry.get("rawdata.converter.csv.rows.out").counter().count();
+        long bytes = (long) registry.get("rawdata.converter.csv.bytes.in").counter().count();
+        long[] sorted = Arrays.copyOf(latencies, converted);
+        Arrays.sort(sorted);
+        return ConversionProfile.builder()
+          .messages(converted)
+          .skipped(rawdataMessages.size() - converted)
+          .failures(failures)
+          .rows(rows)
+          .bytes(bytes)
+          .seconds(seconds)
+          .rowsPerSecond(rows / seconds)
+          .bytesPerSecond(bytes / seconds)
+          .p50Millis(percentileMillis(sorted, 0.5))
+          .p99Millis(percentileMillis(sorted, 0.99))
+          .allocatedBytesPerRow((rows == 0) ? 0 : (double) allocatedBytes / rows)
+          .stageMillis(stageMillis(registry))
+          .build();
+    }
+
+    private List<RawdataMessage> receive(ConverterJobConfig jobConfig, int maxMessages) throws Exception {
+        String sourceName = jobConfig.getRawdataSource().getName();
+        Map<String, String> clientConfig = new HashMap<>();
+        environment.getProperties("rawdata.sources." + sourceName + ".rawdata-client", StringConvention.RAW)
+          .forEach((key, value) -> clientConfig.put(key, String.valueOf(value)));
+        if (! clientConfig.containsKey("provider")) {
+            throw new CsvRawdataConverterException("No rawdata client configured for rawdata source " + sourceName);
+        }
+
+        List<RawdataMessage> rawdataMessages = new ArrayList<>(maxMessages);
+        try (RawdataClient client = ProviderConfigurator.configure(clientConfig, clientConfig.get("provider"), RawdataClientInitializer.class);
+             RawdataConsumer consumer = client.consumer(jobConfig.getRawdataSource().getTopic())) {
+            RawdataMessage rawdataMessage;
+            while (rawdataMessages.size() < maxMessages && (rawdataMessage = consumer.receive(RECEIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) != null) {
+                rawdataMessages.add(rawdataMessage);
+            }
+        }
+        log.info("Profiling the conversion of {} rawdata messages from {}", rawdataMessages.size(), jobConfig.getRawdataSource().getTopic());
+        return rawdataMessages;
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(index, 0)] / 1e6;
+    }
+
+    private static Map<String, Double> stageMillis(SimpleMeterRegistry registry) {
+        Map<String, Double> stageMillis = new LinkedHashMap<>();
+        for (String stage : STAGES) {
+            Timer timer = registry.get("rawdata.converter.csv.stage.duration").tag("stage", stage).timer();
+            stageMillis.put(stage, timer.totalTime(TimeUnit.MILLISECONDS));
+        }
+        FunctionTimer interceptTimer = registry.get("rawdata.converter.csv.intercept.duration").functionTimer();
+        stageMillis.put("intercept", interceptTimer.totalTime(TimeUnit.MILLISECONDS));
+        return stageMillis;
+    }
+
+    @Value
+    @Builder
+    public static class ConversionProfile {
+        /** Number of converted rawdata messages */
+        int messages;
+
+        /** Number of rawdata messages that were not convertible */
+        int skipped;
+
+        /** Number of rawdata messages that failed to convert */
+        int failures;
+
+        long rows;
+        long bytes;
+        double seconds;
+        double rowsPerSecond;
+        double bytesPerSecond;
+        double p50Millis;
+        double p99Millis;
+
+        /** Bytes allocated by the converting thread per converted row */
+        double allocatedBytesPerRow;
+
+        /** Total time per conversion stage. The intercept time is part of the parse time. */
+        Map<String, Double> stageMillis;
+    }
+
+}
@@ -0,0 +1,46 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The columns of a csv item, i.e. the column names and data types declared by the item metadata of the rawdata
+ * messages.
+ *
+ * <p>The columns of a message are looked up both by the pre checks and by the conversion, and parsing the
+ * manifest json costs about as much as converting a small csv item. The columns are therefore cached by the
+ * identity of the manifest item of the message, and evicted once the message is gone. The manifest is not
+ * cached by content, since it holds the position of the message and so differs between all messages.</p>
+ */
+public class CsvColumns {
+
+    static final String RAWDATA_ITEMNAME_MANIFEST = "manifest.json";
+
+    private final String csvItemName;
+    private final Cache<byte[], Optional<List<FieldInfo>>> columns = Caffeine.newBuilder()
+      .weakKeys()
+      .build();
+
+    public CsvColumns(String csvItemName) {
+        this.csvItemName = csvItemName;
+    }
+
+    /**
+     * @return the columns declared by the item metadata of the message, or empty if the message has no item
+     *         metadata
+     */
+    public Optional<List<FieldInfo>> of(RawdataMessage rawdataMessage) {
+        byte[] manifest = rawdataMessage.get(RAWDATA_ITEMNAME_MANIFEST);
+        if (manifest == null) {
+            return CsvSchemaAdapter.columnsOf(rawdataMessage, csvItemName);
+        }
+        return columns.get(manifest, k -> CsvSchemaAdapter.columnsOf(rawdataMessage, csvItemName));
+    }
+
+}
@@ -0,0 +1,164 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import no.ssb.avro.convert.core.ValueInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per job Micrometer instrumentation of the csv conversion stages.
+ *
+ * <ul>
+ *   <li><code>rawdata.converter.csv.stage.duration</code> - timer per stage: parse (tokenizing and building the
+ *   item records, including value interception), build (assembling the target record) and manifest</li>
+ *   <li><code>rawdata.converter.csv.intercept.duration</code> - total time spent in the value interceptors, i.e.
+ *   normalization and pseudonymization. Accumulated without per value timer overhead.</li>
+ *   <li><code>rawdata.converter.csv.bytes.in</code>, <code>rawdata.converter.csv.rows.out</code> and
+ *   <code>rawdata.converter.csv.failures</code> - counters. A message with several failed csv items is counted as
+ *   one failure.</li>
+ *   <li><code>rawdata.converter.csv.columns.dropped</code> - counter of the csv columns of converted items that are
+ *   dropped, since the target schema cannot hold them, e.g. columns added to the collector schema after the job
+ *   started</li>
+ * </ul>
+ *
+ * <p>All meters are tagged with the job name, and are removed from the registry when the metrics are closed, i.e.
+ * when the job stops. A job that is restarted with the same name thus registers new meters, bound to its new
+ * metrics.</p>
+ */
+public class CsvConversionMetrics implements AutoCloseable {
+
+    private static final String PREFIX = "rawdata.converter.csv.";
+
+    private final MeterRegistry meterRegistry;
+    private final List<Meter> meters = new ArrayList<>();
+    private final Timer parseTimer;
+    private final Timer buildTimer;
+    private final Timer manifestTimer;
+    private final Counter bytesIn;
+    private final Counter rowsOut;
+    private final Counter failures;
+    private final Counter droppedColumns;
+    private final LongAdder interceptCount = new LongAdder();
+    private final LongAdder interceptNanos = new LongAdder();
+
+    public CsvConversionMetrics(MeterRegistry meterRegistry, String jobName) {
+        this.meterRegistry = meterRegistry;
+        String job = String.valueOf(jobName);
+        this.parseTimer = stageTimer(meterRegistry, job, "parse");
+        this.buildTimer = stageTimer(meterRegistry, job, "build");
+        this.manifestTimer = stageTimer(meterRegistry, job, "manifest");
+        this.bytesIn = track(Counter.builder(PREFIX + "bytes.in")
+          .description("Csv bytes read")
+          .baseUnit("bytes")
+          .tag("job", job)
+          .register(meterRegistry));
+        this.rowsOut = track(Counter.builder(PREFIX + "rows.out")
+          .description("Csv lines converted")
+          .tag("job", job)
+          .register(meterRegistry));
+        this.failures = track(Counter.builder(PREFIX + "failures")
+          .description("Rawdata messages with csv items that failed to convert, including quarantined messages")
+          .tag("job", job)
+          .register(meterRegistry));
+        this.droppedColumns = track(Counter.builder(PREFIX + "columns.dropped")
+          .description("Csv columns of converted items that are dropped, since the target schema cannot hold them")
+          .tag("job", job)
+          .register(meterRegistry));
+        // A function timer is bound to the metrics it was registered with, so replace the one of a previous
+        // run of the job, if it was never closed
+        FunctionTimer previousInterceptTimer = meterRegistry.find(PREFIX + "intercept.duration").tag("job", job).functionTimer();
+        if (previousInterceptTimer != null) {
+            meterRegistry.remove(previousInterceptTimer);
+        }
+        track(FunctionTimer.builder(PREFIX + "intercept.duration", this,
+            m -> m.interceptCount.sum(),
+            m -> m.interceptNanos.sum(),
+            TimeUnit.NANOSECONDS)
+          .description("Time spent in value interceptors, such as normalization and pseudonymization")
+          .tag("job", job)
+          .register(meterRegistry));
+    }
+
+    /**
+     * @return metrics that are not published anywhere
+     */
+    public static CsvConversionMetrics noop() {
+        return new CsvConversionMetrics(new CompositeMeterRegistry(), "noop");
+    }
+
+    private Timer stageTimer(MeterRegistry meterRegistry, String job, String stage) {
+        return track(Timer.builder(PREFIX + "stage.duration")
+          .description("Time spent per csv conversion stage")
+          .tag("job", job)
+          .tag("stage", stage)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+    }
+
+    private <T extends Meter> T track(T meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    /**
+     * Wrap a value interceptor so that the time spent in it is accumulated.
+     */
+    public ValueInterceptor timed(ValueInterceptor valueInterceptor) {
+        return (field, value) -> {
+            long start = System.nanoTime();
+            try {
+                return valueInterceptor.intercept(field, value);
+            }
+            finally {
+                interceptNanos.add(System.nanoTime() - start);
+                interceptCount.increment();
+            }
+        };
+    }
+
+    public void recordParse(long startNanos, long bytes, int rows) {
+        parseTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        bytesIn.increment(bytes);
+        rowsOut.increment(rows);
+    }
+
+    public void recordBuild(long startNanos) {
+        buildTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordManifest(long startNanos) {
+        manifestTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record a rawdata message with one or more csv items that failed to convert
+     */
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Record the dropped columns of a converted csv item
+     */
+    public void recordDroppedColumns(int columns) {
+        droppedColumns.increment(columns);
+    }
+
+    /**
+     * Remove the meters of the job from the registry
+     */
+    @Override
+    public void close() {
+        meters.forEach(meterRegistry::remove);
+        meters.clear();
+    }
+
+}
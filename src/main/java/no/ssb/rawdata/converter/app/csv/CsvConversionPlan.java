@@ -0,0 +1,376 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvFormat;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvTokenizer;
+import no.ssb.rawdata.converter.app.csv.parse.CsvRecordAssembler;
+import no.ssb.rawdata.converter.app.csv.parse.StringDictionary;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.RecordType;
+import no.ssb.rawdata.converter.app.csv.schema.DataType;
+import no.ssb.rawdata.converter.app.csv.schema.FieldDecoder;
+import no.ssb.rawdata.converter.app.csv.schema.FieldDecoders;
+import no.ssb.rawdata.converter.app.csv.schema.TargetRecordBuilder;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig.Tokenizer.BYTE;
+
+/**
+ * Immutable description of how CSV data should be converted for a converter job.
+ *
+ * <p>The plan is compiled once by {@link CsvRawdataConverter#init(java.util.Collection)}. It resolves the csv
+ * parser settings, column headers and field decoders up front, so that the per message conversion path only has
+ * to parse and build records.</p>
+ *
+ * <p>A plan converts csv data with a given set of columns into the item schema of the job's target schema. If
+ * the columns of a message differ from the target item schema fields, the plan holds a column mapping from csv
+ * column to item schema field. Columns that are not part of the target schema (e.g. because they are not selected
+ * by the column projection) are skipped by the byte tokenizer, and item schema fields
+ * without a corresponding column are left empty. Values are decoded according to the target item schema. Columns
+ * that are unknown to the job, or whose declared data type has changed to one the target field cannot hold, are
+ * dropped as well, and reported as {@link #getDroppedColumns() dropped columns}.</p>
+ *
+ * <p>The contained {@link CsvParserSettings} must be treated as read-only once the plan has been compiled,
+ * since it is shared by all conversions of the job. Byte tokenizers are kept per thread and reused across
+ * messages.</p>
+ */
+@Getter
+public class CsvConversionPlan {
+
+    /** The target csv schema */
+    private final CsvSchemaAdapter csvSchema;
+    private final CsvParserSettings parserSettings;
+
+    /** The csv column names, in column order */
+    private final List<String> headers;
+
+    /** The target item schema */
+    private final Schema itemSchema;
+
+    /** The item schema of the csv columns, typed according to the target item schema */
+    private final Schema parseItemSchema;
+
+    /** The target item schema field position of each csv column (-1 if ignored), or null if they are the same */
+    @Getter(AccessLevel.NONE)
+    private final int[] columnMapping;
+
+    /** The csv columns that the target schema cannot hold, and whose values are dropped */
+    private final List<String> droppedColumns;
+
+    /** The byte tokenizer format, or null if the default csv parser should be used */
+    private final ByteCsvFormat byteCsvFormat;
+
+    /** Min entry size for parallel parsing, or 0 if disabled */
+    private final int parallelParseMinBytes;
+
+    private final int parallelParseChunkBytes;
+
+    /** The target item schema positions of the required fields */
+    @Getter(AccessLevel.NONE)
+    private final int[] requiredFields;
+
+    @Getter(AccessLevel.NONE)
+    private final FieldDecoder[] decoders;
+
+    @Getter(AccessLevel.NONE)
+    private final FieldDescriptor[] fieldDescriptors;
+
+    /** Flags the columns that can be matched by the value interceptors, in column order */
+    @Getter(AccessLevel.NONE)
+    private final boolean[] interceptedColumns;
+
+    /** True if at least one column must be passed through the value interceptors */
+    private final boolean intercepting;
+
+    /** The names of the columns that must be passed through the value interceptors */
+    private final Set<String> interceptedColumnNames;
+
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<ByteCsvTokenizer> byteTokenizers;
+
+    /** The string dictionaries of the current thread, or null if no column is interned */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<StringDictionary[]> stringDictionaries;
+
+    private CsvConversionPlan(CsvSchemaAdapter csvSchema, CsvSchemaAdapter parseSchema, int[] columnMapping,
+                              List<String> droppedColumns, CsvParserSettings parserSettings, ByteCsvFormat byteCsvFormat,
+                              CsvRawdataConverterConfig converterConfig, FieldPathMatcher interceptedFields) {
+        this.csvSchema = csvSchema;
+        this.parserSettings = parserSettings;
+        this.headers = parseSchema.getHeaders();
+        this.itemSchema = csvSchema.getItemSchema();
+        this.parseItemSchema = parseSchema.getItemSchema();
+        this.columnMapping = columnMapping;
+        this.droppedColumns = Collections.unmodifiableList(droppedColumns);
+        this.byteCsvFormat = byteCsvFormat;
+        this.parallelParseMinBytes = (byteCsvFormat != null && csvSchema.getRecordType() == RecordType.COLLECTION)
+          ? converterConfig.getParallelParseMinBytes()
+          : 0;
+        this.parallelParseChunkBytes = converterConfig.getParallelParseChunkBytes();
+        this.requiredFields = requiredFields(csvSchema.getFields());
+        this.decoders = parseSchema.getDecoders();
+        this.fieldDescriptors = headers.stream()
+          .map(name -> new FieldDescriptor("/" + name))
+          .toArray(FieldDescriptor[]::new);
+        this.interceptedColumns = new boolean[fieldDescriptors.length];
+        Set<String> interceptedNames = new HashSet<>();
+        for (int i = 0; i < fieldDescriptors.length; i++) {
+            boolean mapped = columnMapping == null || columnMapping[i] >= 0;
+            interceptedColumns[i] = mapped && interceptedFields.test(fieldDescriptors[i].getPath());
+            if (interceptedColumns[i]) {
+                interceptedNames.add(headers.get(i));
+            }
+        }
+        this.intercepting = ! interceptedNames.isEmpty();
+        this.interceptedColumnNames = Collections.unmodifiableSet(interceptedNames);
+        boolean[] selectedColumns = selectedColumns(columnMapping);
+        this.byteTokenizers = (byteCsvFormat == null) ? null : ThreadLocal.withInitial(() -> new ByteCsvTokenizer(byteCsvFormat, selectedColumns));
+        this.stringDictionaries = (byteCsvFormat == null) ? null : stringDictionaries(converterConfig, selectedColumns);
+    }
+
+    /**
+     * @param interceptedFields matches the field paths that must be passed through the value interceptors
+     */
+    public static CsvConversionPlan of(CsvRawdataConverterConfig converterConfig, CsvSchemaAdapter csvSchema, FieldPathMatcher interceptedFields) {
+        return of(converterConfig, csvSchema, csvSchema.getHeaders(), interceptedFields);
+    }
+
+    /**
+     * @param csvSchema the target csv schema
+     * @param columnNames the csv column names, which may differ from the target item schema fields
+     * @param interceptedFields matches the field paths that must be passed through the value interceptors
+     */
+    public static CsvConversionPlan of(CsvRawdataConverterConfig converterConfig, CsvSchemaAdapter csvSchema, List<String> columnNames, FieldPathMatcher interceptedFields) {
+        List<FieldInfo> columns = columnNames.stream()
+          .map(name -> FieldInfo.builder().name(name).optional(true).build())
+          .collect(Collectors.toList());
+        return of(converterConfig, csvSchema, columns, columns, interceptedFields);
+    }
+
+    /**
+     * @param csvSchema the target csv schema
+     * @param columns the csv columns of a csv schema version, with their declared data types
+     * @param jobColumns the csv columns declared by the sample message, that the target schema is derived from
+     * @param interceptedFields matches the field paths that must be passed through the value interceptors
+     */
+    public static CsvConversionPlan of(CsvRawdataConverterConfig converterConfig, CsvSchemaAdapter csvSchema, List<FieldInfo> columns,
+                                       List<FieldInfo> jobColumns, FieldPathMatcher interceptedFields) {
+        List<String> targetHeaders = csvSchema.getHeaders();
+        List<FieldInfo> parseFields = new ArrayList<>(columns.size());
+        List<String> droppedColumns = new ArrayList<>();
+        int[] columnMapping = new int[columns.size()];
+        boolean mapped = columns.size() != targetHeaders.size();
+        for (int i = 0; i < columns.size(); i++) {
+            FieldInfo column = columns.get(i);
+            int pos = targetHeaders.indexOf(column.getName());
+            if (! isHeld(column, jobColumns, pos < 0 ? null : csvSchema.getFields().get(pos))) {
+                droppedColumns.add(column.getName());
+                pos = -1;
+            }
+            columnMapping[i] = pos;
+            mapped |= pos != i;
+            parseFields.add(pos < 0 ? FieldInfo.optionalString(column.getName()) : csvSchema.getFields().get(pos));
+        }
+        CsvSchemaAdapter parseSchema = mapped ? csvSchema.withFields(parseFields) : csvSchema;
+
+        CsvParserSettings parserSettings = new CsvParserSettings()
+          .configure(converterConfig.getCsvSettings());
+        parserSettings.headers(parseSchema.getHeaders());
+
+        ByteCsvFormat byteCsvFormat = (converterConfig.getTokenizer() == BYTE)
+          ? ByteCsvFormat.resolve(converterConfig.getCsvSettings(), converterConfig.getCharset()).orElse(null)
+          : null;
+
+        return new CsvConversionPlan(csvSchema, parseSchema, mapped ? columnMapping : null, droppedColumns, parserSettings,
+          byteCsvFormat, converterConfig, interceptedFields);
+    }
+
+    /**
+     * @param targetField the target item schema field of the column, or null if the column is not converted
+     * @return false if the column is unknown to the job, or if its declared data type differs from the one the
+     *         job was started with, and the target field cannot hold it
+     */
+    private static boolean isHeld(FieldInfo column, List<FieldInfo> jobColumns, FieldInfo targetField) {
+        FieldInfo jobColumn = jobColumns.stream()
+          .filter(c -> c.getName().equals(column.getName()))
+          .findFirst()
+          .orElse(null);
+        if (jobColumn == null) {
+            return false;
+        }
+        if (targetField == null || Objects.equals(jobColumn.getDataType(), column.getDataType())) {
+            return true;
+        }
+        DataType targetType = targetField.getDataType() == null ? DataType.STRING : targetField.getDataType();
+        return targetType.canHold(column.getDataType());
+    }
+
+    /**
+     * Resolve the string columns to intern. Explicitly configured columns are always interned, others only if
+     * interning is AUTO, and only as long as their cardinality is low.
+     *
+     * @return per thread dictionaries, or null if no column should be interned
+     */
+    private ThreadLocal<StringDictionary[]> stringDictionaries(CsvRawdataConverterConfig converterConfig, boolean[] selectedColumns) {
+        boolean auto = converterConfig.getStringInterning() == CsvRawdataConverterConfig.StringInterning.AUTO;
+        Boolean[] adaptive = new Boolean[headers.size()];
+        boolean any = false;
+        for (int i = 0; i < adaptive.length; i++) {
+            boolean selected = selectedColumns == null || selectedColumns[i];
+            if (selected && decoders[i] == FieldDecoders.STRING && ! interceptedColumns[i]) {
+                if (converterConfig.getInternColumns().contains(headers.get(i))) {
+                    adaptive[i] = false;
+                }
+                else if (auto) {
+                    adaptive[i] = true;
+                }
+            }
+            any |= adaptive[i] != null;
+        }
+        if (! any) {
+            return null;
+        }
+
+        int maxValues = converterConfig.getInternMaxValues();
+        return ThreadLocal.withInitial(() -> {
+            StringDictionary[] dictionaries = new StringDictionary[adaptive.length];
+            for (int i = 0; i < adaptive.length; i++) {
+                if (adaptive[i] != null) {
+                    dictionaries[i] = new StringDictionary(maxValues, adaptive[i]);
+                }
+            }
+            return dictionaries;
+        });
+    }
+
+    /**
+     * @return flags for the csv columns that map to a target item schema field, or null if all columns do
+     */
+    private static boolean[] selectedColumns(int[] columnMapping) {
+        if (columnMapping == null) {
+            return null;
+        }
+        boolean[] selected = new boolean[columnMapping.length];
+        for (int i = 0; i < columnMapping.length; i++) {
+            selected[i] = columnMapping[i] >= 0;
+        }
+        return selected;
+    }
+
+    /**
+     * @return the positions of the fields that are not optional
+     */
+    private static int[] requiredFields(List<FieldInfo> fields) {
+        return IntStream.range(0, fields.size())
+          .filter(i -> ! fields.get(i).isOptional())
+          .toArray();
+    }
+
+    /**
+     * @return true if the csv columns differ from the target item schema fields
+     */
+    public boolean isMapped() {
+        return columnMapping != null;
+    }
+
+    /**
+     * Create a builder that streams the converted csv lines of <code>data</code> into a target record of the
+     * schema's record type. Collections are presized from the line count estimated from the size of the data, so
+     * that the data is not scanned an extra time. The estimate only saves some of the array growth, it does not
+     * reduce the memory held by the converted lines.
+     */
+    public TargetRecordBuilder newTargetRecordBuilder(byte[] data) {
+        int expectedSize = (csvSchema.getRecordType() == RecordType.SINGLE)
+          ? 1
+          : (int) ConversionMemoryGovernor.estimateLines(data.length, headers.size());
+        return csvSchema.newTargetRecordBuilder(expectedSize);
+    }
+
+    public boolean isByteTokenizerEnabled() {
+        return byteCsvFormat != null;
+    }
+
+    /**
+     * @return true if <code>data</code> is large enough to be split into chunks that are parsed in parallel
+     */
+    public boolean isParallelParse(byte[] data) {
+        return parallelParseMinBytes > 0 && data.length >= parallelParseMinBytes;
+    }
+
+    /**
+     * @return true if the bytes of <code>data</code> can be decoded one byte per char
+     */
+    public boolean isLatin1Decodable(byte[] data) {
+        return isLatin1Decodable(data, 0, data.length);
+    }
+
+    /**
+     * @return true if the bytes of <code>data</code> between from and to can be decoded one byte per char
+     */
+    public boolean isLatin1Decodable(byte[] data, int from, int to) {
+        return byteCsvFormat.isLatin1() || ByteCsvTokenizer.isAscii(data, from, to);
+    }
+
+    /**
+     * @return the byte tokenizer of the current thread
+     */
+    public ByteCsvTokenizer byteTokenizer() {
+        if (byteTokenizers == null) {
+            throw new IllegalStateException("The byte tokenizer is not enabled for this conversion plan");
+        }
+        return byteTokenizers.get();
+    }
+
+    /**
+     * Create a handler that assembles item records from tokenized csv lines.
+     *
+     * @param latin1 the result of {@link #isLatin1Decodable(byte[])} for the data being tokenized
+     */
+    public CsvRecordAssembler newRecordAssembler(boolean latin1, ValueInterceptor valueInterceptor, Consumer<GenericRecord> sink) {
+        StringDictionary[] dictionaries = (stringDictionaries == null) ? null : stringDictionaries.get();
+        return new CsvRecordAssembler(itemSchema, decoders, fieldDescriptors, interceptedColumns, columnMapping, requiredFields,
+          dictionaries, valueInterceptor, byteCsvFormat.getCharset(), latin1, sink);
+    }
+
+    /**
+     * Wrap a sink of item records parsed with the {@link #getParseItemSchema() parse item schema}, so that it
+     * receives records of the target item schema. Records that lack a value for a required field are rejected.
+     */
+    public Consumer<GenericRecord> remapping(Consumer<GenericRecord> sink) {
+        if (columnMapping == null) {
+            return (requiredFields.length == 0) ? sink : parsed -> {
+                CsvRecordAssembler.requireValues(parsed, requiredFields);
+                sink.accept(parsed);
+            };
+        }
+
+        return parsed -> {
+            GenericData.Record item = new GenericData.Record(itemSchema);
+            for (int i = 0; i < columnMapping.length; i++) {
+                if (columnMapping[i] >= 0) {
+                    item.put(columnMapping[i], parsed.get(i));
+                }
+            }
+            CsvRecordAssembler.requireValues(item, requiredFields);
+            sink.accept(item);
+        };
+    }
+
+}
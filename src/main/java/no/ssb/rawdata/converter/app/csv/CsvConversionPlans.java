@@ -0,0 +1,86 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter.CsvRawdataConverterException;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import static no.ssb.rawdata.converter.util.RawdataMessageAdapter.posAndIdOf;
+
+/**
+ * The conversion plans of a job, one per csv schema version.
+ *
+ * <p>The collector schema of a topic may change over time, e.g. when columns are added, removed or reordered.
+ * Each message is routed to the plan of its csv schema version, fingerprinted by the column names and data types
+ * declared in its item metadata, which are parsed once per message. Plans are compiled on first use and map the
+ * columns of their version into the job's target schema. Columns that the target schema cannot hold are dropped,
+ * and counted per converted item. Messages without item metadata are converted with the plan of the sample message.</p>
+ */
+@Slf4j
+class CsvConversionPlans {
+
+    private final CsvColumns itemColumns;
+    private final CsvConversionPlan samplePlan;
+    private final Function<List<FieldInfo>, CsvConversionPlan> planCompiler;
+    private final int maxVersions;
+    private final ConcurrentMap<List<FieldInfo>, CsvConversionPlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * @param sampleColumns the columns declared by the item metadata of the sample message
+     * @param samplePlan the plan of the csv schema version of the sample message
+     * @param planCompiler compiles a plan for the given csv columns
+     * @param maxVersions max number of csv schema versions to keep plans for
+     */
+    CsvConversionPlans(String csvItemName, List<FieldInfo> sampleColumns, CsvConversionPlan samplePlan,
+                       Function<List<FieldInfo>, CsvConversionPlan> planCompiler, int maxVersions) {
+        this.itemColumns = new CsvColumns(csvItemName);
+        this.samplePlan = samplePlan;
+        this.planCompiler = planCompiler;
+        this.maxVersions = maxVersions;
+        plans.put(sampleColumns, samplePlan);
+    }
+
+    CsvConversionPlan planFor(RawdataMessage rawdataMessage) {
+        Optional<List<FieldInfo>> columns = itemColumns.of(rawdataMessage);
+        if (columns.isEmpty()) {
+            return samplePlan;
+        }
+
+        CsvConversionPlan plan = plans.get(columns.get());
+        if (plan != null) {
+            return plan;
+        }
+        if (plans.size() >= maxVersions) {
+            throw new CsvRawdataConverterException("Unable to convert rawdata message at " + posAndIdOf(rawdataMessage)
+              + ". Max number of csv schema versions (" + maxVersions + ") exceeded");
+        }
+
+        return plans.computeIfAbsent(columns.get(), c -> {
+            log.info("New csv schema version encountered at {}. Columns: {}", posAndIdOf(rawdataMessage), c);
+            CsvConversionPlan versionPlan = planCompiler.apply(c);
+            if (! versionPlan.getDroppedColumns().isEmpty()) {
+                log.warn("Columns {} of the csv schema version at {} cannot be held by the target schema, and are dropped",
+                  versionPlan.getDroppedColumns(), posAndIdOf(rawdataMessage));
+            }
+            return versionPlan;
+        });
+    }
+
+    /**
+     * @return the plan of the csv schema version of the sample message
+     */
+    CsvConversionPlan samplePlan() {
+        return samplePlan;
+    }
+
+    int size() {
+        return plans.size();
+    }
+
+}
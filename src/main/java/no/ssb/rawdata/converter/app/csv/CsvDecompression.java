@@ -0,0 +1,55 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import com.github.luben.zstd.ZstdInputStream;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig.Compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Detects and decompresses compressed csv entries.
+ */
+final class CsvDecompression {
+
+    private CsvDecompression() {}
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Resolve the compression of a csv entry.
+     *
+     * @param configured the configured compression. AUTO is resolved from the magic bytes of the data.
+     * @return the compression of the data, never AUTO
+     */
+    static Compression resolve(Compression configured, byte[] data) {
+        if (configured != null && configured != Compression.AUTO) {
+            return configured;
+        }
+        if (data == null || data.length < 4) {
+            return Compression.NONE;
+        }
+        if (data[0] == (byte) 0x1F && data[1] == (byte) 0x8B) {
+            return Compression.GZIP;
+        }
+        if (data[0] == (byte) 0x28 && data[1] == (byte) 0xB5 && data[2] == (byte) 0x2F && data[3] == (byte) 0xFD) {
+            return Compression.ZSTD;
+        }
+        return Compression.NONE;
+    }
+
+    /**
+     * @return a stream of the decompressed data
+     */
+    static InputStream open(Compression compression, byte[] data) throws IOException {
+        InputStream in = new ByteArrayInputStream(data);
+        switch (compression) {
+            case GZIP: return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            case ZSTD: return new ZstdInputStream(in);
+            case NONE: return in;
+            default: throw new IllegalArgumentException("Unresolved compression: " + compression);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.Value;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+
+/**
+ * A csv item of the rawdata messages of a job, with the target field and conversion plans of its data.
+ */
+@Value
+class CsvItem {
+
+    /** Name of the rawdata message item holding the csv data */
+    String itemName;
+
+    /** Name of the target record field holding the converted csv data */
+    String fieldName;
+
+    /** The target csv schema */
+    CsvSchemaAdapter csvSchema;
+
+    /** The conversion plans, one per csv schema version */
+    CsvConversionPlans conversionPlans;
+
+    CsvPreValidator preValidator;
+
+    CsvConversionPlan planFor(RawdataMessage rawdataMessage) {
+        return conversionPlans.planFor(rawdataMessage);
+    }
+
+    /**
+     * @return the reason why the csv data of the message is not convertible, or null if it passes the pre checks
+     */
+    String rejectionOf(RawdataMessage rawdataMessage) {
+        return preValidator.rejectionOf(rawdataMessage);
+    }
+
+}
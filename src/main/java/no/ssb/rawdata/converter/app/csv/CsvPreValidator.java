@@ -0,0 +1,115 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig.Compression;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvFormat;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvTokenizer;
+import no.ssb.rawdata.converter.app.csv.parse.CsvRowHandler;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.RecordType;
+
+import java.util.function.ToIntFunction;
+
+import static no.ssb.rawdata.converter.util.RawdataMessageAdapter.posAndIdOf;
+
+/**
+ * Cheap byte level checks of the csv data of a rawdata message, done before attempting to convert it.
+ *
+ * <p>Rejects messages with a missing or blank csv entry, messages with more than one csv line if the record type
+ * is single and, optionally, messages whose first csv line does not have the expected number of columns. Only the
+ * lines needed for the checks are tokenized. If the csv format is not supported by the byte tokenizer, only the
+ * csv entry is checked for content. Compressed csv entries are only checked for being present. If the expected
+ * number of columns cannot be resolved, e.g. because the message has an unknown csv schema version, the column
+ * count is not checked, and the failure is left to the conversion.</p>
+ */
+@Slf4j
+class CsvPreValidator {
+
+    private final String csvItemName;
+    private final RecordType recordType;
+    private final Compression compression;
+    private final ThreadLocal<ByteCsvTokenizer> tokenizers;
+    private final ToIntFunction<RawdataMessage> expectedColumnCount;
+
+    /**
+     * @param format the csv format, or null if not supported by the byte tokenizer
+     * @param expectedColumnCount resolves the expected number of columns of a message, or null if the column
+     *                            count should not be checked
+     */
+    CsvPreValidator(String csvItemName, RecordType recordType, Compression compression, ByteCsvFormat format, ToIntFunction<RawdataMessage> expectedColumnCount) {
+        this.csvItemName = csvItemName;
+        this.recordType = recordType;
+        this.compression = compression;
+        this.tokenizers = (format == null) ? null : ThreadLocal.withInitial(() -> new ByteCsvTokenizer(format));
+        this.expectedColumnCount = (format == null) ? null : expectedColumnCount;
+    }
+
+    /**
+     * @return the reason why the message is not convertible, or null if it passes the checks
+     */
+    String rejectionOf(RawdataMessage rawdataMessage) {
+        byte[] data = rawdataMessage.get(csvItemName);
+        if (data == null || data.length == 0) {
+            return "No csv data in " + csvItemName;
+        }
+        if (CsvDecompression.resolve(compression, data) != Compression.NONE) {
+            return null;
+        }
+        if (tokenizers == null) {
+            return isBlank(data) ? "No csv lines in " + csvItemName : null;
+        }
+
+        int maxRows = (recordType == RecordType.SINGLE) ? 2 : 1;
+        LineCounter lineCounter = new LineCounter();
+        int rows = tokenizers.get().tokenize(data, 0, data.length, lineCounter, maxRows);
+        if (rows == 0) {
+            return "No csv lines in " + csvItemName;
+        }
+        if (rows > 1 && recordType == RecordType.SINGLE) {
+            return "Multiple csv lines in " + csvItemName + ", but record-type=single";
+        }
+        if (expectedColumnCount != null) {
+            int expected;
+            try {
+                expected = expectedColumnCount.applyAsInt(rawdataMessage);
+            }
+            catch (RuntimeException e) {
+                log.debug("Unable to resolve the expected number of csv columns at {}", posAndIdOf(rawdataMessage), e);
+                return null;
+            }
+            if (lineCounter.firstRowColumns != expected) {
+                return "Expected " + expected + " csv columns in " + csvItemName + ", but found " + lineCounter.firstRowColumns;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isBlank(byte[] data) {
+        for (byte b : data) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class LineCounter implements CsvRowHandler {
+        private int columns;
+        private int firstRowColumns = -1;
+
+        @Override
+        public void field(int column, byte[] buf, int offset, int length, boolean quoted) {
+            columns++;
+        }
+
+        @Override
+        public void endRow() {
+            if (firstRowColumns < 0) {
+                firstRowColumns = columns;
+            }
+            columns = 0;
+        }
+    }
+
+}
@@ -1,10 +1,18 @@
 package no.ssb.rawdata.converter.app.csv;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.avro.convert.core.ValueInterceptor;
 import no.ssb.avro.convert.csv.CsvToRecords;
 import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig.Compression;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvFormat;
+import no.ssb.rawdata.converter.app.csv.parse.CsvChunker;
 import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvDataException;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvSchemaException;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+import no.ssb.rawdata.converter.app.csv.schema.TargetRecordBuilder;
 import no.ssb.rawdata.converter.core.convert.ConversionResult;
 import no.ssb.rawdata.converter.core.convert.ConversionResult.ConversionResultBuilder;
 import no.ssb.rawdata.converter.core.convert.RawdataConverter;
@@ -15,35 +23,89 @@ import no.ssb.rawdata.converter.core.schema.DcManifestSchemaAdapter;
 import no.ssb.rawdata.converter.metrics.MetricName;
 import no.ssb.rawdata.converter.util.RawdataMessageAdapter;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinTask;
 
 import static no.ssb.rawdata.converter.util.RawdataMessageAdapter.posAndIdOf;
 
 @Slf4j
-public class CsvRawdataConverter implements RawdataConverter {
+public class CsvRawdataConverter implements RawdataConverter, AutoCloseable {
 
     private static final String RAWDATA_ITEMNAME_ENTRY = "entry";
     private static final String FIELDNAME_MANIFEST = "manifest";
     private static final String FIELDNAME_DC_MANIFEST = "collector";
-    private static final String FIELDNAME_CSV_DATA = "data";
+    public static final String FIELDNAME_CSV_DATA = "data";
+    private static final String FIELDNAME_ERROR = "error";
+
+    /** Initial capacity of the collection of a compressed csv entry, since its line count is unknown */
+    private static final int COMPRESSED_EXPECTED_LINES = 64;
+
+    /** The failures of the csv items of a quarantined message */
+    private static final Schema ERROR_SCHEMA = SchemaBuilder.record("error")
+      .fields()
+      .name("failures").type().array().items(SchemaBuilder.record("failure")
+        .fields()
+        .requiredString("item")
+        .requiredString("type")
+        .optionalString("message")
+        .endRecord()).noDefault()
+      .endRecord();
 
     private final CsvRawdataConverterConfig converterConfig;
     private final ValueInterceptorChain valueInterceptorChain;
+    private final ValueInterceptor valueInterceptor;
+    private final FieldPathMatcher interceptedFields;
+    private final CsvConversionMetrics metrics;
+    private final ConversionMemoryGovernor memoryGovernor;
+    private final List<AutoCloseable> jobResources = new ArrayList<>();
 
     private DcManifestSchemaAdapter dcManifestSchemaAdapter;
-    private CsvSchemaAdapter csvSchemaAdapter;
+    private List<CsvItem> csvItems;
     private Schema targetAvroSchema;
     private Schema manifestSchema;
+    private ManifestBuilder manifestBuilder;
 
     public CsvRawdataConverter(CsvRawdataConverterConfig converterConfig, ValueInterceptorChain valueInterceptorChain) {
+        this(converterConfig, valueInterceptorChain, FieldPathMatcher.ALL);
+    }
+
+    /**
+     * @param interceptedFields matches the field paths that the value interceptor chain needs to see. Values of
+     *                          other fields bypass the chain.
+     */
+    public CsvRawdataConverter(CsvRawdataConverterConfig converterConfig, ValueInterceptorChain valueInterceptorChain, FieldPathMatcher interceptedFields) {
+        this(converterConfig, valueInterceptorChain, interceptedFields, CsvConversionMetrics.noop());
+    }
+
+    /**
+     * @param metrics records the time spent per conversion stage and the amount of data converted
+     */
+    public CsvRawdataConverter(CsvRawdataConverterConfig converterConfig, ValueInterceptorChain valueInterceptorChain, FieldPathMatcher interceptedFields, CsvConversionMetrics metrics) {
+        this(converterConfig, valueInterceptorChain, interceptedFields, metrics, ConversionMemoryGovernor.UNLIMITED);
+    }
+
+    /**
+     * @param memoryGovernor admits the conversion of each rawdata message against a process wide memory budget
+     */
+    public CsvRawdataConverter(CsvRawdataConverterConfig converterConfig, ValueInterceptorChain valueInterceptorChain, FieldPathMatcher interceptedFields, CsvConversionMetrics metrics, ConversionMemoryGovernor memoryGovernor) {
         this.converterConfig = converterConfig;
         this.valueInterceptorChain = valueInterceptorChain;
+        this.valueInterceptor = valueInterceptorChain::intercept;
+        this.interceptedFields = interceptedFields;
+        this.metrics = metrics;
+        this.memoryGovernor = memoryGovernor;
     }
 
     @Override
@@ -57,19 +119,87 @@ public class CsvRawdataConverter implements RawdataConverter {
 
         RawdataMessageAdapter msg = new RawdataMessageAdapter(sample);
         dcManifestSchemaAdapter = DcManifestSchemaAdapter.of(sample);
-        csvSchemaAdapter = CsvSchemaAdapter.of(sample, RAWDATA_ITEMNAME_ENTRY);
-        log.info("Data column names: {}", csvSchemaAdapter.getHeaders());
+
+        Map<String, String> itemFieldNames = (converterConfig.getCsvItems() == null || converterConfig.getCsvItems().isEmpty())
+          ? Map.of(RAWDATA_ITEMNAME_ENTRY, FIELDNAME_CSV_DATA)
+          : converterConfig.getCsvItems();
+        csvItems = new ArrayList<>(itemFieldNames.size());
+        itemFieldNames.forEach((itemName, fieldName) ->
+          csvItems.add(initCsvItem(itemName, fieldName, itemFieldNames.size() > 1, sample, sampleRawdataMessages)));
 
         String targetNamespace = "dapla.rawdata." + msg.getTopic().orElse("csv");
 
         manifestSchema = new AggregateSchemaBuilder("dapla.rawdata.manifest")
           .schema(FIELDNAME_DC_MANIFEST, dcManifestSchemaAdapter.getDcManifestSchema())
           .build();
+        manifestBuilder = new ManifestBuilder(manifestSchema, FIELDNAME_DC_MANIFEST, dcManifestSchemaAdapter, valueInterceptorChain, interceptedFields, sample);
 
-        targetAvroSchema = new AggregateSchemaBuilder(targetNamespace)
-          .schema(FIELDNAME_MANIFEST, manifestSchema)
-          .schema(FIELDNAME_CSV_DATA, csvSchemaAdapter.getTargetSchema())
-          .build();
+        AggregateSchemaBuilder targetSchemaBuilder = new AggregateSchemaBuilder(targetNamespace)
+          .schema(FIELDNAME_MANIFEST, manifestSchema);
+        for (CsvItem csvItem : csvItems) {
+            targetSchemaBuilder.schema(csvItem.getFieldName(), csvItem.getCsvSchema().getTargetSchema());
+        }
+        if (isQuarantining()) {
+            targetSchemaBuilder.schema(FIELDNAME_ERROR, ERROR_SCHEMA);
+        }
+        targetAvroSchema = targetSchemaBuilder.build();
+    }
+
+    /**
+     * Resolve the schema and conversion plans of a csv item from the sample rawdata messages.
+     *
+     * @param namespaced if true, the csv records are placed in a namespace named after the target field, so that
+     *                   the schemas of several csv items do not clash
+     */
+    private CsvItem initCsvItem(String itemName, String fieldName, boolean namespaced, RawdataMessage sample, Collection<RawdataMessage> sampleRawdataMessages) {
+        if (FIELDNAME_MANIFEST.equals(fieldName) || FIELDNAME_ERROR.equals(fieldName)) {
+            throw new CsvRawdataConverterException("Invalid target field name '" + fieldName + "' of csv item '" + itemName + "'. The name is reserved.");
+        }
+
+        CsvSchemaAdapter declaredCsvSchema = CsvSchemaAdapter.of(sample, itemName);
+        if (namespaced) {
+            declaredCsvSchema = declaredCsvSchema.withNamespace(fieldName);
+        }
+        CsvSchemaAdapter sampleCsvSchema = SampleSchemaInference.infer(declaredCsvSchema, sampleRawdataMessages, itemName, converterConfig, interceptedFields);
+        CsvSchemaAdapter targetCsvSchema = sampleCsvSchema.select(converterConfig.getIncludeColumns(), converterConfig.getExcludeColumns());
+        CsvConversionPlan samplePlan = CsvConversionPlan.of(converterConfig, targetCsvSchema, sampleCsvSchema.getHeaders(), interceptedFields);
+        log.info("Data column names of {}: {}", itemName, samplePlan.getHeaders());
+        if (samplePlan.isMapped()) {
+            log.info("Converted column names of {}: {}", itemName, targetCsvSchema.getHeaders());
+        }
+
+        List<FieldInfo> declaredColumns = declaredCsvSchema.getFields();
+        CsvConversionPlans conversionPlans = new CsvConversionPlans(itemName, declaredColumns, samplePlan,
+          columns -> CsvConversionPlan.of(converterConfig, targetCsvSchema, columns, declaredColumns, interceptedFields),
+          converterConfig.getMaxSchemaVersions());
+        CsvPreValidator preValidator = new CsvPreValidator(itemName, targetCsvSchema.getRecordType(), converterConfig.getCompression(),
+          ByteCsvFormat.resolve(converterConfig.getCsvSettings(), converterConfig.getCharset()).orElse(null),
+          converterConfig.isStrictColumnCount() ? m -> conversionPlans.planFor(m).getHeaders().size() : null);
+
+        return new CsvItem(itemName, fieldName, targetCsvSchema, conversionPlans, preValidator);
+    }
+
+    /**
+     * Release a job scoped resource, such as a shared pseudonymizer, when the converter is closed
+     */
+    synchronized void releaseOnClose(AutoCloseable resource) {
+        jobResources.add(resource);
+    }
+
+    /**
+     * Release the job scoped resources of the converter. Called when the job stops.
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = jobResources.size() - 1; i >= 0; i--) {
+            try {
+                jobResources.get(i).close();
+            }
+            catch (Exception e) {
+                log.warn("Failed to release {}", jobResources.get(i), e);
+            }
+        }
+        jobResources.clear();
     }
 
     public DcManifestSchemaAdapter dcMetadataSchemaAdapter() {
@@ -80,6 +210,17 @@ public class CsvRawdataConverter implements RawdataConverter {
         return dcManifestSchemaAdapter;
     }
 
+    /**
+     * @return the conversion plan of the sample message, for the first csv item
+     */
+    public CsvConversionPlan conversionPlan() {
+        if (csvItems == null) {
+            throw new IllegalStateException("conversionPlan is null. Make sure RawdataConverter#init() was invoked in advance.");
+        }
+
+        return csvItems.get(0).getConversionPlans().samplePlan();
+    }
+
     @Override
     public Schema targetAvroSchema() {
         if (targetAvroSchema == null) {
@@ -89,45 +230,341 @@ public class CsvRawdataConverter implements RawdataConverter {
         return targetAvroSchema;
     }
 
+    /**
+     * Pre check the csv items of a rawdata message. When quarantining, every message is convertible, and items
+     * that fail the pre checks are quarantined by {@link #convert(RawdataMessage)}.
+     */
     @Override
     public boolean isConvertible(RawdataMessage rawdataMessage) {
+        if (csvItems == null || isQuarantining()) {
+            return true;
+        }
+        for (CsvItem csvItem : csvItems) {
+            String rejection = csvItem.rejectionOf(rawdataMessage);
+            if (rejection != null) {
+                log.debug("Skipping rawdata message at {}: {}", posAndIdOf(rawdataMessage), rejection);
+                return false;
+            }
+        }
         return true;
     }
 
+    /**
+     * Convert the manifest and the csv items of a rawdata message. If the message has several csv items, they
+     * are parsed in parallel on the parse pool. The conversion waits until it is admitted by the memory governor.
+     *
+     * <p>When quarantining, the csv items that fail the pre checks, have no conversion plan or fail to convert
+     * are recorded in the error record of the message, and the other csv items are converted as usual.</p>
+     */
     @Override
     public ConversionResult convert(RawdataMessage rawdataMessage) {
         ConversionResultBuilder resultBuilder = ConversionResult.builder(targetAvroSchema(), rawdataMessage);
         addManifest(rawdataMessage, resultBuilder);
-        convertCsvData(rawdataMessage, csvSchemaAdapter, resultBuilder);
+
+        CsvData[] csvData = new CsvData[csvItems.size()];
+        CsvConversionPlan[] plans = new CsvConversionPlan[csvItems.size()];
+        for (int i = 0; i < csvItems.size(); i++) {
+            CsvItem csvItem = csvItems.get(i);
+            try {
+                String rejection = isQuarantining() ? csvItem.rejectionOf(rawdataMessage) : null;
+                if (rejection != null) {
+                    throw new CsvDataException(rejection);
+                }
+                plans[i] = csvItem.planFor(rawdataMessage);
+                if (! plans[i].getDroppedColumns().isEmpty()) {
+                    metrics.recordDroppedColumns(plans[i].getDroppedColumns().size());
+                }
+            }
+            catch (RuntimeException e) {
+                csvData[i] = new CsvData(csvItem, null, 0, e);
+            }
+        }
+
+        try (ConversionMemoryGovernor.Admission admission = memoryGovernor.admit(estimateHeapBytes(rawdataMessage, plans))) {
+            if (csvItems.size() == 1) {
+                if (csvData[0] == null) {
+                    csvData[0] = convertCsvData(rawdataMessage, csvItems.get(0), plans[0]);
+                }
+            }
+            else {
+                convertCsvDataInParallel(rawdataMessage, plans, csvData);
+            }
+        }
+
+        for (CsvData data : csvData) {
+            if (data.failure != null) {
+                metrics.recordFailure();
+                break;
+            }
+        }
+        List<CsvData> failures = new ArrayList<>();
+        for (CsvData data : csvData) {
+            addCsvData(rawdataMessage, data, resultBuilder, failures);
+        }
+        if (! failures.isEmpty()) {
+            resultBuilder.withRecord(FIELDNAME_ERROR, errorRecord(failures));
+        }
         return resultBuilder.build();
     }
 
-    void addManifest(RawdataMessage rawdataMessage, ConversionResultBuilder resultBuilder) {
-        GenericRecord manifest = new GenericRecordBuilder(manifestSchema)
-          .set(FIELDNAME_DC_MANIFEST, dcManifestSchemaAdapter.newRecord(rawdataMessage, valueInterceptorChain))
-          .build();
+    /**
+     * Convert the csv items that have a conversion plan on the parse pool, and wait for all of them
+     */
+    private void convertCsvDataInParallel(RawdataMessage rawdataMessage, CsvConversionPlan[] plans, CsvData[] csvData) {
+        List<ForkJoinTask<CsvData>> tasks = new ArrayList<>(csvItems.size());
+        for (int i = 0; i < csvItems.size(); i++) {
+            CsvItem csvItem = csvItems.get(i);
+            CsvConversionPlan plan = plans[i];
+            tasks.add((csvData[i] != null) ? null : ConversionExecutors.parsePool().submit(() -> convertCsvData(rawdataMessage, csvItem, plan)));
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i) != null) {
+                csvData[i] = tasks.get(i).join();
+            }
+        }
+    }
+
+    /**
+     * @return the estimated heap needed for decoding the csv items of a rawdata message, or 0 if the memory
+     *         governor is disabled
+     */
+    private long estimateHeapBytes(RawdataMessage rawdataMessage, CsvConversionPlan[] plans) {
+        if (! memoryGovernor.isEnabled()) {
+            return 0;
+        }
+
+        long estimate = 0;
+        for (int i = 0; i < csvItems.size(); i++) {
+            byte[] data = rawdataMessage.get(csvItems.get(i).getItemName());
+            if (data != null && plans[i] != null) {
+                boolean compressed = CsvDecompression.resolve(converterConfig.getCompression(), data) != Compression.NONE;
+                estimate += ConversionMemoryGovernor.estimateHeapBytes(data.length, plans[i].getHeaders().size(), compressed);
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Convert a batch of rawdata messages concurrently on a bounded, process wide executor.
+     *
+     * <p>The results are returned in the same order as the messages. A message that fails to convert does not
+     * affect the others; its result holds the failure instead of the converted records.</p>
+     */
+    public List<ConversionResult> convertAll(List<RawdataMessage> rawdataMessages) {
+        if (rawdataMessages.size() == 1) {
+            return List.of(convertIsolated(rawdataMessages.get(0)));
+        }
+
+        List<CompletableFuture<ConversionResult>> futures = new ArrayList<>(rawdataMessages.size());
+        for (RawdataMessage rawdataMessage : rawdataMessages) {
+            futures.add(CompletableFuture.supplyAsync(() -> convertIsolated(rawdataMessage), ConversionExecutors.batchExecutor()));
+        }
 
-        resultBuilder.withRecord(FIELDNAME_MANIFEST, manifest);
+        List<ConversionResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<ConversionResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private ConversionResult convertIsolated(RawdataMessage rawdataMessage) {
+        try {
+            return convert(rawdataMessage);
+        }
+        catch (Exception e) {
+            if (e instanceof CsvDataException) {
+                log.warn("Failed to convert rawdata message at {}: {}", posAndIdOf(rawdataMessage), e.getMessage());
+            }
+            else {
+                log.warn("Failed to convert rawdata message at {}", posAndIdOf(rawdataMessage), e);
+            }
+            return ConversionResult.builder(targetAvroSchema(), rawdataMessage)
+              .addFailure(e)
+              .build();
+        }
     }
 
-    void convertCsvData(RawdataMessage rawdataMessage, CsvSchemaAdapter csvSchema, ConversionResultBuilder resultBuilder) {
-        byte[] data = rawdataMessage.get(RAWDATA_ITEMNAME_ENTRY);
-        CsvParserSettings csvParserSettings = new CsvParserSettings().configure(converterConfig.getCsvSettings());
-        csvParserSettings.headers(csvSchema.getHeaders());
+    void addManifest(RawdataMessage rawdataMessage, ConversionResultBuilder resultBuilder) {
+        long start = System.nanoTime();
+        resultBuilder.withRecord(FIELDNAME_MANIFEST, manifestBuilder.newManifest(rawdataMessage));
+        metrics.recordManifest(start);
+    }
 
+    /**
+     * Convert the data of a csv item. Failures are returned rather than thrown, so that the items of a message
+     * can be added to the conversion result in order, by the calling thread.
+     */
+    CsvData convertCsvData(RawdataMessage rawdataMessage, CsvItem csvItem, CsvConversionPlan plan) {
+        byte[] data = rawdataMessage.get(csvItem.getItemName());
 
-        try (CsvToRecords records = new CsvToRecords(new ByteArrayInputStream(data), csvSchema.getItemSchema(), csvParserSettings)
-          .withValueInterceptor(valueInterceptorChain::intercept)) {
+        try {
+            long start = System.nanoTime();
+            TargetRecordBuilder targetRecord;
+            Compression compression = CsvDecompression.resolve(converterConfig.getCompression(), data);
+            if (compression != Compression.NONE) {
+                targetRecord = plan.getCsvSchema().newTargetRecordBuilder(COMPRESSED_EXPECTED_LINES);
+                try (InputStream in = CsvDecompression.open(compression, data)) {
+                    if (plan.isByteTokenizerEnabled()) {
+                        tokenizeCsvStream(in, plan, targetRecord);
+                    }
+                    else {
+                        parseCsvData(in, plan, targetRecord);
+                    }
+                }
+            }
+            else {
+                targetRecord = plan.newTargetRecordBuilder(data);
+                if (plan.isByteTokenizerEnabled()) {
+                    tokenizeCsvData(data, plan, targetRecord);
+                }
+                else {
+                    parseCsvData(new ByteArrayInputStream(data), plan, targetRecord);
+                }
+            }
+            metrics.recordParse(start, data.length, targetRecord.size());
 
-            List<GenericRecord> dataItems = new ArrayList<>();
-            records.forEach(dataItems::add);
-            resultBuilder.appendCounter(MetricName.RAWDATA_RECORDS_TOTAL, dataItems.size());
-            resultBuilder.withRecord(FIELDNAME_CSV_DATA, csvSchema.toTargetRecord(dataItems));
+            start = System.nanoTime();
+            GenericRecord record = targetRecord.build();
+            metrics.recordBuild(start);
+            return new CsvData(csvItem, record, targetRecord.size(), null);
         }
         catch (Exception e) {
-            resultBuilder.addFailure(e);
-            throw new CsvRawdataConverterException("Error converting CSV data at " + posAndIdOf(rawdataMessage), e);
+            return new CsvData(csvItem, null, 0, e);
+        }
+    }
+
+    /**
+     * Add the converted data of a csv item to the conversion result. A failure is added to the quarantined
+     * failures when quarantining, and fails the conversion otherwise. Failures caused by the csv data fail the
+     * conversion with a {@link CsvDataException}, without a stack trace, since they are expected for bad data.
+     * Other failures are unexpected, and keep their stack trace.
+     */
+    private void addCsvData(RawdataMessage rawdataMessage, CsvData csvData, ConversionResultBuilder resultBuilder, List<CsvData> failures) {
+        if (csvData.failure == null) {
+            resultBuilder.appendCounter(MetricName.RAWDATA_RECORDS_TOTAL, csvData.rows);
+            resultBuilder.withRecord(csvData.csvItem.getFieldName(), csvData.record);
+            return;
+        }
+
+        Exception e = csvData.failure;
+        if (isQuarantining()) {
+            log.warn("Quarantined CSV data of {} at {}: {}", csvData.csvItem.getItemName(), posAndIdOf(rawdataMessage), e.getMessage());
+            failures.add(csvData);
+            return;
+        }
+        resultBuilder.addFailure(e);
+        String msg = "Error converting CSV data of " + csvData.csvItem.getItemName() + " at " + posAndIdOf(rawdataMessage);
+        if (e instanceof CsvSchemaException) {
+            throw new CsvDataException(msg + ": " + e.getMessage());
+        }
+        throw new CsvRawdataConverterException(msg, e);
+    }
+
+    private boolean isQuarantining() {
+        return converterConfig.getFailureMode() == CsvRawdataConverterConfig.FailureMode.QUARANTINE;
+    }
+
+    private static GenericRecord errorRecord(List<CsvData> failures) {
+        Schema failureSchema = ERROR_SCHEMA.getField("failures").schema().getElementType();
+        List<GenericRecord> failureRecords = new ArrayList<>(failures.size());
+        for (CsvData csvData : failures) {
+            GenericData.Record failure = new GenericData.Record(failureSchema);
+            failure.put("item", csvData.csvItem.getItemName());
+            failure.put("type", csvData.failure.getClass().getSimpleName());
+            failure.put("message", csvData.failure.getMessage());
+            failureRecords.add(failure);
+        }
+
+        GenericData.Record error = new GenericData.Record(ERROR_SCHEMA);
+        error.put("failures", failureRecords);
+        return error;
+    }
+
+    private void parseCsvData(InputStream in, CsvConversionPlan plan, TargetRecordBuilder targetRecord) throws Exception {
+        try (CsvToRecords records = new CsvToRecords(in, plan.getParseItemSchema(), plan.getParserSettings())) {
+            ValueInterceptor csvValueInterceptor = routedValueInterceptor(plan);
+            if (csvValueInterceptor != null) {
+                records.withValueInterceptor(csvValueInterceptor);
+            }
+            records.forEach(plan.remapping(targetRecord));
+        }
+    }
+
+    /**
+     * Resolve the value interceptor used by the default csv parser, so that only values of the intercepted
+     * columns are passed to the value interceptor chain.
+     *
+     * @return the routed interceptor, or null if no column needs to be intercepted
+     */
+    private ValueInterceptor routedValueInterceptor(CsvConversionPlan plan) {
+        if (! plan.isIntercepting()) {
+            return null;
+        }
+        if (interceptedFields == FieldPathMatcher.ALL) {
+            return valueInterceptor;
+        }
+
+        Set<String> interceptedColumnNames = plan.getInterceptedColumnNames();
+        return (field, value) -> interceptedColumnNames.contains(field.getName())
+          ? valueInterceptorChain.intercept(field, value)
+          : value;
+    }
+
+    private void tokenizeCsvData(byte[] data, CsvConversionPlan plan, TargetRecordBuilder targetRecord) {
+        boolean latin1 = plan.isLatin1Decodable(data);
+        if (plan.isParallelParse(data)) {
+            tokenizeCsvDataInParallel(data, plan, latin1, targetRecord);
+        }
+        else {
+            plan.byteTokenizer().tokenize(data, 0, data.length, plan.newRecordAssembler(latin1, valueInterceptor, targetRecord));
+        }
+    }
+
+    /**
+     * Tokenize decompressed csv data window by window, without materialising the full decompressed data.
+     */
+    private void tokenizeCsvStream(InputStream in, CsvConversionPlan plan, TargetRecordBuilder targetRecord) throws IOException {
+        plan.byteTokenizer().tokenize(in, (window, from, to) ->
+          plan.newRecordAssembler(plan.isLatin1Decodable(window, from, to), valueInterceptor, targetRecord));
+    }
+
+    /**
+     * Split the csv data at line boundaries, tokenize the chunks on the parse pool and append the lines to the
+     * target record in their original order.
+     */
+    private void tokenizeCsvDataInParallel(byte[] data, CsvConversionPlan plan, boolean latin1, TargetRecordBuilder targetRecord) {
+        int[] boundaries = CsvChunker.split(data, plan.getByteCsvFormat().getQuote(), plan.getParallelParseChunkBytes());
+        List<ForkJoinTask<List<GenericRecord>>> tasks = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            int from = boundaries[i];
+            int to = boundaries[i + 1];
+            tasks.add(ConversionExecutors.parsePool().submit(() -> {
+                List<GenericRecord> dataItems = new ArrayList<>();
+                plan.byteTokenizer().tokenize(data, from, to, plan.newRecordAssembler(latin1, valueInterceptor, dataItems::add));
+                return dataItems;
+            }));
+        }
+
+        try {
+            for (ForkJoinTask<List<GenericRecord>> task : tasks) {
+                task.join().forEach(targetRecord);
+            }
         }
+        catch (RuntimeException e) {
+            tasks.forEach(t -> t.cancel(true));
+            throw e;
+        }
+    }
+
+    /**
+     * The converted data of a csv item, or the failure to convert it
+     */
+    @RequiredArgsConstructor
+    static class CsvData {
+        private final CsvItem csvItem;
+        private final GenericRecord record;
+        private final int rows;
+        private final Exception failure;
     }
 
     public static class CsvRawdataConverterException extends RawdataConverterException {
@@ -1,16 +1,28 @@
 package no.ssb.rawdata.converter.app.csv;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import io.micronaut.context.annotation.ConfigurationProperties;
 import io.micronaut.core.convert.format.MapFormat;
 import lombok.Data;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @ConfigurationProperties("rawdata.converter.app.csv")
 @Data
 public class CsvRawdataConverterConfig {
 
+    /**
+     * The csv items of each rawdata message to convert, mapped to the name of the target field that holds their
+     * converted data. If empty, the <code>entry</code> item is converted into the <code>data</code> field.
+     * The items of a message are parsed in parallel. E.g. <code>header: header, detail: data</code>
+     */
+    @MapFormat(transformation = MapFormat.MapTransformation.FLAT)
+    private Map<String, String> csvItems = new LinkedHashMap<>();
+
     /**
      * Optional csv parser settings overrides.
      * E.g. allowing to explicitly specify the delimiter character
@@ -18,4 +30,161 @@ public class CsvRawdataConverterConfig {
     @MapFormat(transformation = MapFormat.MapTransformation.FLAT)
     private Map<String, Object> csvSettings = new HashMap<>();
 
-}
\ No newline at end of file
+    /**
+     * The csv tokenizer to use. The byte tokenizer scans the raw csv bytes directly, and requires an explicitly
+     * configured single character delimiter. If csvSettings contains other settings than the delimiter and
+     * column-headers-present, the default parser is used. Numeric and boolean columns are only decoded by the
+     * typed field decoders, without intermediate strings, with the byte tokenizer.
+     */
+    private Tokenizer tokenizer = Tokenizer.DEFAULT;
+
+    /**
+     * Charset of the csv data, e.g. UTF-8 or ISO-8859-1. Used by the byte tokenizer.
+     */
+    private String charset = "UTF-8";
+
+    /**
+     * Compression of the csv entries. AUTO detects gzip and zstd compressed entries from their magic bytes.
+     * Compressed entries are decompressed as a stream, and are never parsed in parallel.
+     */
+    private Compression compression = Compression.AUTO;
+
+    /**
+     * Min size in bytes of a record-type=collection csv entry before it is split into chunks that are parsed
+     * in parallel. 0 disables parallel parsing. Only applies to the byte tokenizer, and assumes that quote
+     * characters only occur as field enclosures or escaped quotes.
+     */
+    private int parallelParseMinBytes = 0;
+
+    /**
+     * Approximate size in bytes of each chunk when parsing a csv entry in parallel.
+     */
+    private int parallelParseChunkBytes = 4 * 1024 * 1024;
+
+    /**
+     * Max estimated heap in bytes of the csv conversions in flight, across all jobs. Conversions that do not fit
+     * wait until enough memory is released. 0 disables admission control. Only the application level setting
+     * applies, not job specific overrides.
+     */
+    private long memoryBudgetBytes = 0;
+
+    /**
+     * Max number of pseudonymized values to memoize per job. 0 disables the pseudonymization cache.
+     */
+    private long pseudoCacheMaxSize = 0;
+
+    /**
+     * Names of the csv columns to convert. If empty, all columns are converted, except the excluded ones.
+     */
+    private List<String> includeColumns = new ArrayList<>();
+
+    /**
+     * Names of the csv columns to leave out of the converted data
+     */
+    private List<String> excludeColumns = new ArrayList<>();
+
+    /**
+     * Normalization of string values per column name. The value is a comma separated list of options:
+     * strip-control, replace-control, trim and collapse-whitespace.
+     * E.g. <code>BrukerstedNavn: replace-control,collapse-whitespace,trim</code>
+     */
+    @MapFormat(transformation = MapFormat.MapTransformation.FLAT)
+    private Map<String, String> normalization = new HashMap<>();
+
+    /**
+     * Share repeated string values through per column dictionaries. OFF only interns the intern-columns. AUTO
+     * interns all string columns, and stops interning a column once it has more distinct values than
+     * intern-max-values. Only applies to the byte tokenizer, and not to intercepted columns.
+     */
+    private StringInterning stringInterning = StringInterning.OFF;
+
+    /**
+     * Names of string columns to always intern, e.g. low cardinality columns such as municipality or status codes
+     */
+    private List<String> internColumns = new ArrayList<>();
+
+    /**
+     * Max number of distinct values to intern per column and thread
+     */
+    private int internMaxValues = 1024;
+
+    /**
+     * Infer column types from the sample rawdata messages, reconciled with the declared csv schema metadata.
+     * OFF uses the declared schema as is. TYPES tightens string columns to the boolean, int, long or double type
+     * that all sample values fit, and widens declared types that the sample values contradict.
+     * TYPES_AND_NULLABILITY additionally makes columns that had a value on every sample line required, so lines
+     * that later lack a value for such a column fail when written.
+     */
+    private SchemaInference schemaInference = SchemaInference.OFF;
+
+    /**
+     * Max number of sample rawdata messages to scan when inferring the schema
+     */
+    private int schemaInferenceMaxSamples = 100;
+
+    /**
+     * Max number of csv schema versions (distinct sets of columns declared by the collector metadata) that a job
+     * can convert. Messages of further versions fail to convert.
+     */
+    private int maxSchemaVersions = 32;
+
+    /**
+     * How to handle rawdata messages with csv data that fails to convert. FAIL fails the conversion of the
+     * message, and skips messages that fail the pre checks. QUARANTINE converts every message, and records the
+     * csv items that fail the pre checks or fail to convert in an error record, with the item name, failure type
+     * and message of each, without logging stack traces.
+     */
+    private FailureMode failureMode = FailureMode.FAIL;
+
+    /**
+     * If true, rawdata messages whose first csv line does not have the declared number of columns are not
+     * considered convertible. Requires a csv format supported by the byte tokenizer.
+     */
+    private boolean strictColumnCount = false;
+
+    public enum Compression {
+        AUTO, NONE, GZIP, ZSTD;
+
+        @JsonCreator
+        public static Compression from(String s) {
+            return Compression.valueOf(s.toUpperCase());
+        }
+    }
+
+    public enum FailureMode {
+        FAIL, QUARANTINE;
+
+        @JsonCreator
+        public static FailureMode from(String s) {
+            return FailureMode.valueOf(s.toUpperCase());
+        }
+    }
+
+    public enum StringInterning {
+        OFF, AUTO;
+
+        @JsonCreator
+        public static StringInterning from(String s) {
+            return StringInterning.valueOf(s.toUpperCase());
+        }
+    }
+
+    public enum SchemaInference {
+        OFF, TYPES, TYPES_AND_NULLABILITY;
+
+        @JsonCreator
+        public static SchemaInference from(String s) {
+            return SchemaInference.valueOf(s.toUpperCase());
+        }
+    }
+
+    public enum Tokenizer {
+        DEFAULT, BYTE;
+
+        @JsonCreator
+        public static Tokenizer from(String s) {
+            return Tokenizer.valueOf(s.toUpperCase());
+        }
+    }
+
+}
@@ -1,8 +1,11 @@
 package no.ssb.rawdata.converter.app.csv;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import no.ssb.avro.convert.core.ValueInterceptor;
 import no.ssb.dlp.pseudo.core.FieldPseudonymizer;
+import no.ssb.dlp.pseudo.core.PseudoFuncRule;
 import no.ssb.rawdata.converter.core.convert.RawdataConverter;
 import no.ssb.rawdata.converter.core.convert.RawdataConverterFactory;
 import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
@@ -12,6 +15,9 @@ import no.ssb.rawdata.converter.core.pseudo.FieldPseudonymizerFactory;
 import no.ssb.rawdata.converter.util.Json;
 
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Singleton
 @RequiredArgsConstructor
@@ -19,12 +25,25 @@ import javax.inject.Singleton;
 public class DefaultRawdataConverterFactory implements RawdataConverterFactory {
     private final FieldPseudonymizerFactory pseudonymizerFactory;
     private final CsvRawdataConverterConfig defaultRawdataConverterConfig;
+    private final MeterRegistry meterRegistry;
+    private final ConversionMemoryGovernor memoryGovernor;
+
+    /**
+     * Field pseudonymizers, shared by the jobs with the same pseudo rules. The pseudo functions of the rules name
+     * the secrets they use, so jobs with the same rules also use the same key material. A pseudonymizer is
+     * released when the converters of all jobs using it are closed.
+     */
+    private final SharedValueInterceptors pseudonymizers = new SharedValueInterceptors();
 
     @Override
     public RawdataConverter newRawdataConverter(ConverterJobConfig jobConfig) {
+        return newRawdataConverter(jobConfig, converterConfigOf(jobConfig));
+    }
+
+    CsvRawdataConverterConfig converterConfigOf(ConverterJobConfig jobConfig) {
         CsvRawdataConverterConfig converterConfig = defaultRawdataConverterConfig;
 
-        if (! jobConfig.getAppConfig().isEmpty()) {
+        if (jobConfig.getAppConfig() != null && ! jobConfig.getAppConfig().isEmpty()) {
             try {
                 converterConfig = Json.toObject(CsvRawdataConverterConfig.class, jobConfig.appConfigJson());
             }
@@ -33,26 +52,69 @@ public class DefaultRawdataConverterFactory implements RawdataConverterFactory {
             }
         }
 
-        return newRawdataConverter(jobConfig, converterConfig);
+        return converterConfig;
     }
+
     public RawdataConverter newRawdataConverter(ConverterJobConfig jobConfig, CsvRawdataConverterConfig converterConfig) {
+        return newRawdataConverter(jobConfig, converterConfig, meterRegistry);
+    }
+
+    /**
+     * @param meterRegistry the registry of the conversion metrics of the job
+     */
+    CsvRawdataConverter newRawdataConverter(ConverterJobConfig jobConfig, CsvRawdataConverterConfig converterConfig, MeterRegistry meterRegistry) {
+        // Make sure the CsvConverterConfig is not null
+        if (converterConfig == null) {
+            converterConfig = (defaultRawdataConverterConfig == null) ? new CsvRawdataConverterConfig() : defaultRawdataConverterConfig;
+        }
+
+        CsvConversionMetrics metrics = new CsvConversionMetrics(meterRegistry, jobConfig.getJobName());
+        List<AutoCloseable> jobResources = new ArrayList<>(List.of(metrics));
         ValueInterceptorChain valueInterceptorChain = new ValueInterceptorChain();
+        FieldPathMatcher interceptedFields = FieldPathMatcher.NONE;
+
+        if (converterConfig.getNormalization() != null && ! converterConfig.getNormalization().isEmpty()) {
+            valueInterceptorChain.register(metrics.timed(new FieldNormalizer(converterConfig.getNormalization())));
+            interceptedFields = FieldPathMatcher.ofFieldNames(converterConfig.getNormalization().keySet());
+        }
 
         if (jobConfig.getPseudoRules() != null && ! jobConfig.getPseudoRules().isEmpty()) {
-            FieldPseudonymizer fieldPseudonymizer = pseudonymizerFactory.newFieldPseudonymizer(jobConfig);
-            valueInterceptorChain.register(fieldPseudonymizer::pseudonymize);
+            SharedValueInterceptors.Lease sharedPseudonymizer = sharedFieldPseudonymizer(jobConfig);
+            jobResources.add(sharedPseudonymizer);
+            ValueInterceptor pseudonymizer = sharedPseudonymizer;
+            if (converterConfig.getPseudoCacheMaxSize() > 0) {
+                CachingValueInterceptor cachingPseudonymizer = new CachingValueInterceptor(pseudonymizer, converterConfig.getPseudoCacheMaxSize(), meterRegistry, "rawdata.converter.csv.pseudo.cache", jobConfig.getJobName());
+                jobResources.add(cachingPseudonymizer);
+                pseudonymizer = cachingPseudonymizer;
+            }
+            valueInterceptorChain.register(metrics.timed(pseudonymizer));
+
+            // Only values of fields that can be matched by a pseudo rule need to pass through the chain
+            interceptedFields = interceptedFields.or(FieldPathMatcher.of(jobConfig.getPseudoRules().stream()
+              .map(PseudoFuncRule::getPattern)
+              .collect(Collectors.toList())));
         }
 /*
         if (jobConfig.getRawdataConverterConfig().isSchemaMetricsEnabled()) {
             valueInterceptorChain.register(schemaMetricsPublisher::notifyFieldConverted);
         }
 */
-        // Make sure the CsvConverterConfig is not null
-        if (converterConfig == null) {
-            converterConfig = (defaultRawdataConverterConfig == null) ? new CsvRawdataConverterConfig() : defaultRawdataConverterConfig;
-        }
 
-        return new CsvRawdataConverter(converterConfig, valueInterceptorChain);
+        CsvRawdataConverter converter = new CsvRawdataConverter(converterConfig, valueInterceptorChain, interceptedFields, metrics, memoryGovernor);
+        jobResources.forEach(converter::releaseOnClose);
+        return converter;
+    }
+
+    private SharedValueInterceptors.Lease sharedFieldPseudonymizer(ConverterJobConfig jobConfig) {
+        List<List<String>> pseudoRules = jobConfig.getPseudoRules().stream()
+          .map(rule -> List.of(String.valueOf(rule.getPattern()), String.valueOf(rule.getFunc())))
+          .collect(Collectors.toList());
+
+        return pseudonymizers.acquire(pseudoRules, () -> {
+            log.info("Creating field pseudonymizer for job {}", jobConfig.getJobName());
+            FieldPseudonymizer fieldPseudonymizer = pseudonymizerFactory.newFieldPseudonymizer(jobConfig);
+            return fieldPseudonymizer::pseudonymize;
+        });
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter.CsvRawdataConverterException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Value interceptor that normalizes the values of configured columns, e.g. free text columns with embedded line
+ * breaks.
+ *
+ * <p>Each value is normalized in a single pass. The output is only materialised once it starts to differ from the
+ * value, so a value that needs no change is returned as the original instance. Control characters include the
+ * unicode line and paragraph separators.</p>
+ */
+@Slf4j
+public class FieldNormalizer implements ValueInterceptor {
+
+    private final Map<String, Rule> rules;
+
+    /**
+     * @param rules the normalization options per column name. See {@link Rule#parse(String)}.
+     */
+    public FieldNormalizer(Map<String, String> rules) {
+        this.rules = new HashMap<>();
+        rules.forEach((column, options) -> this.rules.put(column, Rule.parse(options)));
+        log.info("Normalizing columns: {}", this.rules);
+    }
+
+    @Override
+    public String intercept(FieldDescriptor field, String value) {
+        if (value == null) {
+            return null;
+        }
+        Rule rule = rules.get(field.getName());
+        return (rule == null) ? value : rule.apply(value);
+    }
+
+    @Value
+    @Builder
+    public static class Rule {
+        boolean stripControl;
+        boolean replaceControl;
+        boolean trim;
+        boolean collapseWhitespace;
+
+        /**
+         * Parse comma separated normalization options:
+         * <ul>
+         *   <li><code>strip-control</code> - remove control characters</li>
+         *   <li><code>replace-control</code> - replace control characters with a space</li>
+         *   <li><code>trim</code> - remove leading and trailing whitespace</li>
+         *   <li><code>collapse-whitespace</code> - replace each run of whitespace with a single space</li>
+         * </ul>
+         */
+        public static Rule parse(String options) {
+            RuleBuilder rule = Rule.builder();
+            for (String option : String.valueOf(options).split(",")) {
+                switch (option.trim().toLowerCase()) {
+                    case "strip-control": rule.stripControl(true); break;
+                    case "replace-control": rule.replaceControl(true); break;
+                    case "trim": rule.trim(true); break;
+                    case "collapse-whitespace": rule.collapseWhitespace(true); break;
+                    default: throw new CsvRawdataConverterException("Unknown normalization option '" + option + "' in '" + options + "'");
+                }
+            }
+            Rule r = rule.build();
+            if (r.stripControl && r.replaceControl) {
+                throw new CsvRawdataConverterException("Normalization options strip-control and replace-control are mutually exclusive");
+            }
+            return r;
+        }
+
+        public String apply(String value) {
+            return new Pass(value).run();
+        }
+
+        private static boolean isControl(char c) {
+            return Character.isISOControl(c) || c == '\u2028' || c == '\u2029';
+        }
+
+        /**
+         * Normalization of a value. The output is only materialised once it starts to differ from the input, so
+         * values that are unchanged are returned as is, and values that are only trimmed at the end become a
+         * substring.
+         */
+        private class Pass {
+            private final String value;
+            private StringBuilder out;
+
+            /** Length of the output while it is still identical to a prefix of the value */
+            private int identicalLength;
+
+            Pass(String value) {
+                this.value = value;
+            }
+
+            String run() {
+                boolean deferWhitespace = trim || collapseWhitespace;
+                boolean emittedAny = false;
+                int runStart = -1;
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (isControl(c)) {
+                        if (stripControl) {
+                            continue;
+                        }
+                        if (replaceControl) {
+                            c = ' ';
+                        }
+                    }
+
+                    if (deferWhitespace && Character.isWhitespace(c)) {
+                        if (runStart < 0) {
+                            runStart = i;
+                        }
+                        continue;
+                    }
+
+                    if (runStart >= 0) {
+                        if (emittedAny || ! trim) {
+                            emitWhitespace(runStart, i);
+                        }
+                        runStart = -1;
+                    }
+                    emit(c, i);
+                    emittedAny = true;
+                }
+
+                if (runStart >= 0 && ! trim) {
+                    emitWhitespace(runStart, value.length());
+                }
+
+                if (out != null) {
+                    return out.toString();
+                }
+                return (identicalLength == value.length()) ? value : value.substring(0, identicalLength);
+            }
+
+            private void emitWhitespace(int from, int to) {
+                if (collapseWhitespace) {
+                    emit(' ', from);
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    char c = value.charAt(i);
+                    if (isControl(c)) {
+                        if (stripControl) {
+                            continue;
+                        }
+                        if (replaceControl) {
+                            c = ' ';
+                        }
+                    }
+                    emit(c, i);
+                }
+            }
+
+            private void emit(char c, int sourceIndex) {
+                if (out == null) {
+                    if (sourceIndex == identicalLength && value.charAt(sourceIndex) == c) {
+                        identicalLength++;
+                        return;
+                    }
+                    out = new StringBuilder(value.length());
+                    out.append(value, 0, identicalLength);
+                }
+                out.append(c);
+            }
+        }
+    }
+
+}
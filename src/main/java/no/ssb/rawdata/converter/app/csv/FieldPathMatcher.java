@@ -0,0 +1,83 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Determines which field paths the value interceptor chain needs to see.
+ *
+ * <p>Used to resolve, once per job, which columns can be matched by any of the pseudo rules, so that all other
+ * values can bypass the value interceptor chain. Patterns are glob patterns, as used by the pseudo rules. Columns
+ * that are normalized are matched by field name.</p>
+ */
+public class FieldPathMatcher implements Predicate<String> {
+
+    /** Matches all field paths, i.e. every value is passed to the value interceptor chain */
+    public static final FieldPathMatcher ALL = new FieldPathMatcher(null);
+
+    /** Matches no field paths, i.e. the value interceptor chain is bypassed altogether */
+    public static final FieldPathMatcher NONE = new FieldPathMatcher(List.of());
+
+    private final List<PathMatcher> pathMatchers;
+
+    private FieldPathMatcher(List<PathMatcher> pathMatchers) {
+        this.pathMatchers = pathMatchers;
+    }
+
+    public static FieldPathMatcher of(Collection<String> globPatterns) {
+        return new FieldPathMatcher(globPatterns.stream()
+          .map(pattern -> FileSystems.getDefault().getPathMatcher("glob:" + pattern))
+          .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return a matcher of the top level fields with the given names, i.e. the paths <code>/name</code>
+     */
+    public static FieldPathMatcher ofFieldNames(Collection<String> fieldNames) {
+        return new FieldPathMatcher(fieldNames.stream()
+          .map(name -> Paths.get("/" + name))
+          .map(fieldPath -> (PathMatcher) fieldPath::equals)
+          .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return a matcher of the field paths matched by this or the other matcher
+     */
+    public FieldPathMatcher or(FieldPathMatcher other) {
+        if (pathMatchers == null || other.pathMatchers == null) {
+            return ALL;
+        }
+
+        List<PathMatcher> combined = new ArrayList<>(pathMatchers);
+        combined.addAll(other.pathMatchers);
+        return new FieldPathMatcher(combined);
+    }
+
+    @Override
+    public boolean test(String fieldPath) {
+        if (pathMatchers == null) {
+            return true;
+        }
+
+        for (PathMatcher pathMatcher : pathMatchers) {
+            if (pathMatcher.matches(Paths.get(fieldPath))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if this matcher does not match any field path
+     */
+    public boolean isNone() {
+        return pathMatchers != null && pathMatchers.isEmpty();
+    }
+
+}
@@ -0,0 +1,66 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import no.ssb.rawdata.converter.core.schema.DcManifestSchemaAdapter;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Builds the manifest record of each converted message.
+ *
+ * <p>The manifest schema, the field position of the collector manifest and the value interceptor chain to use
+ * are resolved once per job. The collector manifest field paths are those that {@link DcManifestSchemaAdapter}
+ * passes to the value interceptor chain when building the collector manifest of a sample message. If no pseudo
+ * rule matches any of them, the collector manifest is built without the value interceptor chain.</p>
+ *
+ * <p>The message varying parts of the collector manifest are produced by {@link DcManifestSchemaAdapter}, which
+ * does not expose which of its fields are constant within a topic. The collector manifest is therefore still
+ * built per message.</p>
+ */
+@Slf4j
+class ManifestBuilder {
+
+    private final Schema manifestSchema;
+    private final int dcManifestPos;
+    private final DcManifestSchemaAdapter dcManifestSchemaAdapter;
+    private final ValueInterceptorChain valueInterceptorChain;
+
+    ManifestBuilder(Schema manifestSchema, String dcManifestFieldName, DcManifestSchemaAdapter dcManifestSchemaAdapter,
+                    ValueInterceptorChain valueInterceptorChain, FieldPathMatcher interceptedFields, RawdataMessage sample) {
+        this.manifestSchema = manifestSchema;
+        this.dcManifestPos = manifestSchema.getField(dcManifestFieldName).pos();
+        this.dcManifestSchemaAdapter = dcManifestSchemaAdapter;
+
+        Set<String> dcManifestFieldPaths = interceptedFieldPaths(dcManifestSchemaAdapter, sample);
+        boolean intercepting = dcManifestFieldPaths.stream().anyMatch(interceptedFields);
+        log.info("Collector manifest fields {} {} the value interceptor chain", dcManifestFieldPaths, intercepting ? "pass through" : "bypass");
+        this.valueInterceptorChain = intercepting ? valueInterceptorChain : new ValueInterceptorChain();
+    }
+
+    GenericRecord newManifest(RawdataMessage rawdataMessage) {
+        GenericData.Record manifest = new GenericData.Record(manifestSchema);
+        manifest.put(dcManifestPos, dcManifestSchemaAdapter.newRecord(rawdataMessage, valueInterceptorChain));
+        return manifest;
+    }
+
+    /**
+     * @return the paths of the fields that the collector manifest of the sample passes to the value interceptor chain
+     */
+    static Set<String> interceptedFieldPaths(DcManifestSchemaAdapter dcManifestSchemaAdapter, RawdataMessage sample) {
+        Set<String> paths = new LinkedHashSet<>();
+        ValueInterceptorChain recordingChain = new ValueInterceptorChain();
+        recordingChain.register((field, value) -> {
+            paths.add(field.getPath());
+            return value;
+        });
+        dcManifestSchemaAdapter.newRecord(sample, recordingChain);
+        return paths;
+    }
+
+}
@@ -0,0 +1,143 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig.Compression;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig.SchemaInference;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvFormat;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvTokenizer;
+import no.ssb.rawdata.converter.app.csv.parse.CsvRowHandler;
+import no.ssb.rawdata.converter.app.csv.schema.ColumnProfiles;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static no.ssb.rawdata.converter.util.RawdataMessageAdapter.posAndIdOf;
+
+/**
+ * Infers the csv schema from a set of sample rawdata messages.
+ *
+ * <p>The samples are decompressed and tokenized in parallel on the parse pool, and the resulting
+ * {@link ColumnProfiles} are reconciled with the declared schema. Inference requires a csv format that is supported by the byte tokenizer,
+ * otherwise the declared schema is used as is. Only samples of the declared csv schema version are profiled, since
+ * the columns of other versions differ in names, order or type.</p>
+ *
+ * <p>Columns matched by the value interceptors keep their declared type and nullability, since the sample values
+ * are not what ends up in the converted records once they have been pseudonymized or normalized.</p>
+ */
+@Slf4j
+final class SampleSchemaInference {
+
+    private SampleSchemaInference() {}
+
+    static CsvSchemaAdapter infer(CsvSchemaAdapter declaredSchema, Collection<RawdataMessage> sampleRawdataMessages,
+                                  String csvItemName, CsvRawdataConverterConfig converterConfig,
+                                  FieldPathMatcher interceptedFields) {
+        SchemaInference mode = converterConfig.getSchemaInference();
+        if (mode == null || mode == SchemaInference.OFF) {
+            return declaredSchema;
+        }
+
+        Optional<ByteCsvFormat> format = ByteCsvFormat.resolve(converterConfig.getCsvSettings(), converterConfig.getCharset());
+        if (format.isEmpty()) {
+            log.warn("Schema inference requires a csv format supported by the byte tokenizer. Using declared schema.");
+            return declaredSchema;
+        }
+
+        List<FieldInfo> declaredFields = declaredSchema.getFields();
+        List<RawdataMessage> samples = sampleRawdataMessages.stream()
+          .filter(msg -> msg.get(csvItemName) != null)
+          .filter(msg -> isOfDeclaredVersion(msg, csvItemName, declaredFields))
+          .limit(Math.max(converterConfig.getSchemaInferenceMaxSamples(), 1))
+          .collect(Collectors.toList());
+        int columnCount = declaredFields.size();
+
+        ColumnProfiles profiles = ConversionExecutors.parsePool().submit(() ->
+          samples.parallelStream()
+            .map(msg -> profile(msg, csvItemName, format.get(), converterConfig.getCompression(), columnCount))
+            .reduce(ColumnProfiles::merge)
+            .orElseGet(() -> new ColumnProfiles(columnCount))
+        ).join();
+
+        if (profiles.getRows() == 0) {
+            log.warn("No csv lines found in {} sample rawdata messages. Using declared schema.", samples.size());
+            return declaredSchema;
+        }
+
+        List<FieldInfo> fields = profiles.reconcile(declaredFields, mode == SchemaInference.TYPES_AND_NULLABILITY);
+        for (int i = 0; i < fields.size(); i++) {
+            if (interceptedFields.test("/" + declaredFields.get(i).getName())) {
+                fields.set(i, declaredFields.get(i));
+            }
+        }
+        CsvSchemaAdapter inferredSchema = declaredSchema.withFields(fields);
+        log.info("Inferred item schema from {} csv lines in {} sample rawdata messages: {}", profiles.getRows(), samples.size(), inferredSchema.getItemSchema());
+        return inferredSchema;
+    }
+
+    /**
+     * @return true if the sample declares the same columns as the declared schema, or declares no columns at all
+     */
+    private static boolean isOfDeclaredVersion(RawdataMessage msg, String csvItemName, List<FieldInfo> declaredFields) {
+        Optional<List<FieldInfo>> columns = CsvSchemaAdapter.columnsOf(msg, csvItemName);
+        if (columns.isPresent() && ! columns.get().equals(declaredFields)) {
+            log.info("Skipping sample rawdata message at {} from schema inference, since its csv schema version differs. Columns: {}",
+              posAndIdOf(msg), columns.get());
+            return false;
+        }
+        return true;
+    }
+
+    private static ColumnProfiles profile(RawdataMessage msg, String csvItemName, ByteCsvFormat format,
+                                          Compression configuredCompression, int columnCount) {
+        ColumnProfiles profiles = new ColumnProfiles(columnCount);
+        ProfilingRowHandler handler = new ProfilingRowHandler(profiles, format.getCharset());
+        byte[] data = msg.get(csvItemName);
+        try {
+            Compression compression = CsvDecompression.resolve(configuredCompression, data);
+            if (compression == Compression.NONE) {
+                new ByteCsvTokenizer(format).tokenize(data, 0, data.length, handler);
+            }
+            else {
+                try (InputStream in = CsvDecompression.open(compression, data)) {
+                    new ByteCsvTokenizer(format).tokenize(in, (window, from, to) -> handler);
+                }
+            }
+            return profiles;
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("Skipping sample rawdata message at {} from schema inference", posAndIdOf(msg), e);
+            return new ColumnProfiles(columnCount);
+        }
+    }
+
+    private static class ProfilingRowHandler implements CsvRowHandler {
+        private final ColumnProfiles profiles;
+        private final Charset charset;
+
+        ProfilingRowHandler(ColumnProfiles profiles, Charset charset) {
+            this.profiles = profiles;
+            this.charset = charset;
+        }
+
+        @Override
+        public void field(int column, byte[] buf, int offset, int length, boolean quoted) {
+            if (length > 0) {
+                profiles.observe(column, new String(buf, offset, length, charset));
+            }
+        }
+
+        @Override
+        public void endRow() {
+            profiles.endRow();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Value interceptors that are shared by the jobs with the same configuration, e.g. the field pseudonymizers of
+ * the jobs with the same pseudo rules.
+ *
+ * <p>The interceptor of a configuration is created once, by the first job that acquires it, so that secret
+ * lookup and key derivation are done once for all jobs using it. Each job holds a lease on the interceptor, and
+ * the interceptor is released when the last lease is closed, i.e. when the last job using it stops.</p>
+ *
+ * <p>The field pseudonymizer is not documented as thread safe, and a converter calls it from several threads
+ * when csv items or chunks are parsed in parallel. Calls to a shared interceptor are therefore serialized.</p>
+ */
+public class SharedValueInterceptors {
+
+    private final Map<Object, Shared> shared = new HashMap<>();
+
+    /**
+     * @param key the configuration that the interceptor is created from
+     * @param factory creates the interceptor, if no job holds a lease on an interceptor of the configuration
+     * @return a lease on the shared interceptor of the configuration, to close when the job stops
+     */
+    public synchronized Lease acquire(Object key, Supplier<ValueInterceptor> factory) {
+        Shared interceptor = shared.computeIfAbsent(key, k -> new Shared(factory.get()));
+        interceptor.leases++;
+        return new Lease(key, interceptor);
+    }
+
+    private synchronized void release(Object key, Shared interceptor) {
+        if (--interceptor.leases == 0) {
+            shared.remove(key, interceptor);
+        }
+    }
+
+    /**
+     * @return the number of interceptors that are held by at least one job
+     */
+    public synchronized int size() {
+        return shared.size();
+    }
+
+    private static class Shared {
+        private final ValueInterceptor interceptor;
+        private int leases;
+
+        Shared(ValueInterceptor interceptor) {
+            this.interceptor = interceptor;
+        }
+
+        synchronized String intercept(FieldDescriptor field, String value) {
+            return interceptor.intercept(field, value);
+        }
+    }
+
+    /**
+     * A job's use of a shared interceptor
+     */
+    public class Lease implements ValueInterceptor, AutoCloseable {
+        private final Object key;
+        private final Shared interceptor;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(Object key, Shared interceptor) {
+            this.key = key;
+            this.interceptor = interceptor;
+        }
+
+        @Override
+        public String intercept(FieldDescriptor field, String value) {
+            return interceptor.intercept(field, value);
+        }
+
+        /**
+         * @return true if this and the other lease share the same interceptor
+         */
+        public boolean isSharedWith(Lease other) {
+            return interceptor == other.interceptor;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(key, interceptor);
+            }
+        }
+    }
+
+}
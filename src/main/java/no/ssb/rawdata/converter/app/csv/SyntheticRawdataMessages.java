@@ -0,0 +1,127 @@
+package no.ssb.rawdata.converter.app.csv;
+
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.rawdata.api.RawdataMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates rawdata messages with synthetic csv entries, shaped like the messages produced by the data collector:
+ * an <code>entry</code> item holding the csv bytes and a <code>manifest.json</code> item holding the item
+ * metadata, including the csv schema (record type and typed fields).
+ *
+ * <p>Columns cycle through the string, int, long and double data types. Data is generated from a fixed seed, so
+ * that runs are comparable. Used by the CDS training run and the JMH benchmarks.</p>
+ */
+public class SyntheticRawdataMessages {
+
+    public static final String DELIMITER = ";";
+    private static final String[] DATA_TYPES = {"STRING", "INT", "LONG", "DOUBLE"};
+    private static final String[] WORDS = {"Oslo", "Bergen", "Trondheim", "Stavanger", "Tromsø", "Bodø", "Ålesund", "Kristiansand"};
+
+    private final int columns;
+    private final int rowsPerMessage;
+    private final String recordType;
+    private final boolean quoted;
+    private final Random random = new Random(42);
+    private final ULID ulid = new ULID();
+    private long position = 0;
+
+    /**
+     * @param columns number of csv columns
+     * @param rowsPerMessage number of csv lines per message. Must be 1 for record-type=single.
+     * @param recordType single or collection
+     * @param quoted if true, string values are quoted and some contain delimiters, escaped quotes and line breaks
+     */
+    public SyntheticRawdataMessages(int columns, int rowsPerMessage, String recordType, boolean quoted) {
+        this.columns = columns;
+        this.rowsPerMessage = rowsPerMessage;
+        this.recordType = recordType;
+        this.quoted = quoted;
+    }
+
+    public static String columnName(int column) {
+        return "col" + column;
+    }
+
+    public List<RawdataMessage> generate(int count) {
+        List<RawdataMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(next());
+        }
+        return messages;
+    }
+
+    public RawdataMessage next() {
+        byte[] entry = csv().getBytes(StandardCharsets.UTF_8);
+        String pos = String.valueOf(++position);
+        return RawdataMessage.builder()
+          .ulid(ulid.nextValue())
+          .position(pos)
+          .put("entry", entry)
+          .put("manifest.json", manifestJson(pos, entry.length).getBytes(StandardCharsets.UTF_8))
+          .build();
+    }
+
+    String csv() {
+        StringBuilder sb = new StringBuilder(rowsPerMessage * columns * 8);
+        for (int row = 0; row < rowsPerMessage; row++) {
+            for (int col = 0; col < columns; col++) {
+                if (col > 0) {
+                    sb.append(DELIMITER);
+                }
+                appendValue(sb, DATA_TYPES[col % DATA_TYPES.length]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void appendValue(StringBuilder sb, String dataType) {
+        switch (dataType) {
+            case "INT": sb.append(random.nextInt(100_000)); break;
+            case "LONG": sb.append(10_000_000_000L + random.nextInt(Integer.MAX_VALUE)); break;
+            case "DOUBLE": sb.append(random.nextInt(1_000_000) / 100d); break;
+            default:
+                String word = WORDS[random.nextInt(WORDS.length)];
+                if (! quoted) {
+                    sb.append(word);
+                }
+                else if (random.nextInt(10) == 0) {
+                    sb.append("\"").append(word).append(DELIMITER).append(" \"\"").append(word).append("\"\"\nline two\"");
+                }
+                else {
+                    sb.append("\"").append(word).append("\"");
+                }
+        }
+    }
+
+    private String manifestJson(String pos, int contentLength) {
+        StringBuilder fields = new StringBuilder();
+        for (int col = 0; col < columns; col++) {
+            if (col > 0) {
+                fields.append(",");
+            }
+            fields.append("{\"name\":\"").append(columnName(col))
+              .append("\",\"mapped-name\":\"").append(columnName(col))
+              .append("\",\"data-type\":\"").append(DATA_TYPES[col % DATA_TYPES.length]).append("\"}");
+        }
+
+        return "[{\"metadata\":{"
+          + "\"topic\":\"synthetic\","
+          + "\"position\":\"" + pos + "\","
+          + "\"resource-type\":\"entry\","
+          + "\"content-type\":\"text/csv\","
+          + "\"content-length\":" + contentLength
+          + "},\"schema\":{"
+          + "\"type\":\"csv\","
+          + "\"record-type\":\"" + recordType + "\","
+          + "\"delimiter\":\"" + DELIMITER + "\","
+          + "\"fields\":[" + fields + "]"
+          + "}}]";
+    }
+
+}
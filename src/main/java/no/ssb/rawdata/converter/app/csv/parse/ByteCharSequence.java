@@ -0,0 +1,43 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable {@link CharSequence} view of a byte slice, where each byte is a single ISO-8859-1 char.
+ *
+ * <p>Used to feed ASCII/Latin-1 bytes to the typed field decoders without materialising a String.</p>
+ */
+final class ByteCharSequence implements CharSequence {
+
+    private byte[] buf;
+    private int offset;
+    private int length;
+
+    ByteCharSequence wrap(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buf[offset + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buf, offset + start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+}
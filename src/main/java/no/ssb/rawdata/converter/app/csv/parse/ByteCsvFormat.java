@@ -0,0 +1,85 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.avro.convert.csv.CsvParserSettings;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The subset of csv settings supported by the {@link ByteCsvTokenizer}.
+ *
+ * <p>The byte tokenizer only handles a single byte delimiter, double quotes and a charset that encodes
+ * ASCII characters as single bytes that never occur inside multibyte sequences (e.g. UTF-8, ISO-8859-1 and the
+ * windows-125x code pages). Other configurations are resolved to {@link Optional#empty()}, signaling that
+ * the default csv parser should be used.</p>
+ */
+@Value
+@Builder
+@Slf4j
+public class ByteCsvFormat {
+
+    private static final Set<String> SUPPORTED_SETTINGS = Set.of(
+      CsvParserSettings.DELIMITERS,
+      CsvParserSettings.COLUMN_HEADERS_PRESENT
+    );
+
+    private final byte delimiter;
+
+    @Builder.Default
+    private final byte quote = '"';
+
+    private final boolean headerPresent;
+
+    @Builder.Default
+    private final Charset charset = StandardCharsets.UTF_8;
+
+    /**
+     * @return true if every byte of the data can be decoded as a single ISO-8859-1 char
+     */
+    public boolean isLatin1() {
+        return StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    public static Optional<ByteCsvFormat> resolve(Map<String, Object> csvSettings, String charsetName) {
+        for (String key : csvSettings.keySet()) {
+            if (! SUPPORTED_SETTINGS.contains(key)) {
+                log.info("Csv setting '{}' is not supported by the byte tokenizer. Using default csv parser.", key);
+                return Optional.empty();
+            }
+        }
+
+        String delimiters = csvSettings.get(CsvParserSettings.DELIMITERS) == null ? null : String.valueOf(csvSettings.get(CsvParserSettings.DELIMITERS));
+        if (delimiters == null || delimiters.length() != 1 || delimiters.charAt(0) >= 0x80 || delimiters.charAt(0) == '"' || delimiters.charAt(0) == '\n' || delimiters.charAt(0) == '\r') {
+            log.info("The byte tokenizer requires a single ASCII delimiter, but delimiters was '{}'. Using default csv parser.", delimiters);
+            return Optional.empty();
+        }
+
+        Charset charset = Charset.forName(charsetName);
+        if (! isAsciiCompatible(charset)) {
+            log.warn("Charset {} is not supported by the byte tokenizer. Using default csv parser.", charset);
+            return Optional.empty();
+        }
+
+        Object headerPresent = csvSettings.get(CsvParserSettings.COLUMN_HEADERS_PRESENT);
+        return Optional.of(ByteCsvFormat.builder()
+          .delimiter((byte) delimiters.charAt(0))
+          .headerPresent(headerPresent != null && Boolean.parseBoolean(String.valueOf(headerPresent)))
+          .charset(charset)
+          .build());
+    }
+
+    static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return StandardCharsets.UTF_8.equals(charset)
+          || StandardCharsets.US_ASCII.equals(charset)
+          || name.startsWith("ISO-8859-")
+          || name.startsWith("windows-125");
+    }
+
+}
@@ -0,0 +1,479 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Csv tokenizer that scans the raw csv bytes directly, without decoding them to chars first.
+ *
+ * <p>Delimiters, quotes and line breaks are located eight bytes at a time using SWAR (SIMD within a register)
+ * tricks. Field bytes are handed to a {@link CsvRowHandler} as slices of the source array, so nothing is
+ * copied unless a quoted field contains escaped quotes.</p>
+ *
+ * <p>Supports quoted fields (including embedded delimiters and line breaks), doubled quotes as escape,
+ * <code>\n</code> and <code>\r\n</code> line endings, and skips empty lines as well as a leading UTF-8 byte
+ * order mark. Like the default csv parser, leading and trailing whitespace (any byte up to and including space)
+ * of unquoted fields is ignored, as is whitespace around quoted fields. Whitespace inside quotes is kept.</p>
+ *
+ * <p>A tokenizer can be restricted to a set of selected columns. Unselected fields are not passed to the handler
+ * and quoted ones are not unescaped. Once past the last selected column, the rest of the line is skipped by
+ * scanning for the next line feed that is not enclosed in quotes.</p>
+ *
+ * <p>Csv data can also be tokenized from a stream, e.g. of decompressed bytes. The stream is read into a reusable
+ * window, and only complete lines are tokenized. The incomplete last line is carried over to the next window.</p>
+ *
+ * <p>Instances hold reusable scratch and window buffers, and are not thread safe.</p>
+ */
+public final class ByteCsvTokenizer {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final ByteCsvFormat format;
+    private final byte delimiter;
+    private final byte quote;
+    private final long delimiterPattern;
+    private final long quotePattern;
+    private final long newlinePattern;
+
+    /** Flags the columns to pass to the handler, or null if all columns should be passed */
+    private final boolean[] selectedColumns;
+
+    /** Columns at or beyond this index are skipped */
+    private final int columnLimit;
+
+    private static final int INITIAL_WINDOW_SIZE = 256 * 1024;
+
+    private byte[] scratch = new byte[256];
+    private byte[] window;
+
+    public ByteCsvTokenizer(ByteCsvFormat format) {
+        this(format, null);
+    }
+
+    /**
+     * @param selectedColumns flags the columns to pass to the handler. Columns beyond the array are skipped. If
+     *                        null, all columns are passed.
+     */
+    public ByteCsvTokenizer(ByteCsvFormat format, boolean[] selectedColumns) {
+        this.format = format;
+        this.selectedColumns = selectedColumns;
+        this.columnLimit = (selectedColumns == null) ? Integer.MAX_VALUE : lastSelected(selectedColumns) + 1;
+        this.delimiter = format.getDelimiter();
+        this.quote = format.getQuote();
+        this.delimiterPattern = broadcast(delimiter);
+        this.quotePattern = broadcast(quote);
+        this.newlinePattern = broadcast(LF);
+    }
+
+    public ByteCsvFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Tokenize the csv lines found in <code>data</code> between <code>from</code> (inclusive) and
+     * <code>to</code> (exclusive). If <code>from</code> is 0, a configured header line is skipped.
+     *
+     * @return the number of lines passed to the handler
+     */
+    public int tokenize(byte[] data, int from, int to, CsvRowHandler handler) {
+        return tokenize(data, from, to, handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Tokenize at most <code>maxRows</code> csv lines found in <code>data</code> between <code>from</code>
+     * (inclusive) and <code>to</code> (exclusive). If <code>from</code> is 0, a configured header line is skipped.
+     *
+     * @return the number of lines passed to the handler
+     */
+    public int tokenize(byte[] data, int from, int to, CsvRowHandler handler, int maxRows) {
+        return tokenize(data, from, to, handler, maxRows, from == 0);
+    }
+
+    /**
+     * Tokenize the csv lines read from a stream. The stream is not closed.
+     *
+     * @param handlers provides the row handler for each window of complete lines
+     * @return the number of lines passed to the handlers
+     */
+    public int tokenize(InputStream in, WindowHandler handlers) throws IOException {
+        if (window == null) {
+            window = new byte[INITIAL_WINDOW_SIZE];
+        }
+
+        int rows = 0;
+        int len = 0;
+        boolean startOfData = true;
+        boolean eof = false;
+        while (! eof) {
+            if (len == window.length) {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+            int n = in.readNBytes(window, len, window.length - len);
+            eof = n < window.length - len;
+            len += n;
+
+            int end = eof ? len : endOfLastLine(window, len);
+            if (end == 0) {
+                continue;
+            }
+            rows += tokenize(window, 0, end, handlers.rowHandler(window, 0, end), Integer.MAX_VALUE, startOfData);
+            startOfData = false;
+            System.arraycopy(window, end, window, 0, len - end);
+            len -= end;
+        }
+
+        return rows;
+    }
+
+    /**
+     * @return the position right after the line feed that ends the last complete line, or 0 if none
+     */
+    private int endOfLastLine(byte[] data, int to) {
+        int end = 0;
+        int lf;
+        while ((lf = indexOfUnquotedNewline(data, end, to)) < to) {
+            end = lf + 1;
+        }
+        return end;
+    }
+
+    private int tokenize(byte[] data, int from, int to, CsvRowHandler handler, int maxRows, boolean startOfData) {
+        int pos = from;
+        boolean skipRow = false;
+        if (startOfData) {
+            if (StandardCharsets.UTF_8.equals(format.getCharset()) && startsWith(data, to, UTF8_BOM)) {
+                pos = UTF8_BOM.length;
+            }
+            skipRow = format.isHeaderPresent();
+        }
+
+        int rows = 0;
+        while (pos < to && rows < maxRows) {
+            // Skip empty lines
+            byte b = data[pos];
+            if (b == LF || (b == CR && (pos + 1 == to || data[pos + 1] == LF))) {
+                pos++;
+                continue;
+            }
+
+            int column = 0;
+            while (true) {
+                if (column >= columnLimit) {
+                    pos = indexOfUnquotedNewline(data, pos, to) + 1;
+                    break;
+                }
+
+                boolean selected = ! skipRow && (selectedColumns == null || selectedColumns[column]);
+                pos = skipLeadingWhitespace(data, pos, to);
+                if (pos < to && data[pos] == quote) {
+                    pos = quotedField(data, pos, to, column, selected ? handler : null);
+                    if (pos < to && data[pos] != delimiter && data[pos] != LF) {
+                        // Lenient: ignore anything between a closing quote and the next delimiter
+                        pos = indexOfDelimiterOrNewline(data, pos, to);
+                    }
+                }
+                else {
+                    int end = indexOfDelimiterOrNewline(data, pos, to);
+                    int fieldEnd = end;
+                    while (fieldEnd > pos && isWhitespace(data[fieldEnd - 1])) {
+                        fieldEnd--;
+                    }
+                    if (selected) {
+                        handler.field(column, data, pos, fieldEnd - pos, false);
+                    }
+                    pos = end;
+                }
+
+                column++;
+                if (pos < to && data[pos] == delimiter) {
+                    pos++;
+                    continue;
+                }
+
+                // End of line (or end of data)
+                pos++;
+                break;
+            }
+
+            if (skipRow) {
+                skipRow = false;
+            }
+            else {
+                handler.endRow();
+                rows++;
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Provides the row handler for a window of complete csv lines read from a stream.
+     */
+    @FunctionalInterface
+    public interface WindowHandler {
+
+        /**
+         * @param data the window buffer, which is reused for the next window
+         * @param from start of the lines in the window
+         * @param to end of the lines in the window
+         */
+        CsvRowHandler rowHandler(byte[] data, int from, int to);
+    }
+
+    /**
+     * Handle a quoted field starting at <code>pos</code>.
+     *
+     * @return the position right after the closing quote
+     */
+    private int quotedField(byte[] data, int pos, int to, int column, CsvRowHandler handler) {
+        int start = pos + 1;
+        int q = indexOf(data, start, to, quotePattern, quote);
+
+        // Fast path: no escaped quotes, pass a slice of the source array
+        if (q >= 0 && (q + 1 == to || data[q + 1] != quote)) {
+            if (handler != null) {
+                handler.field(column, data, start, q - start, true);
+            }
+            return q + 1;
+        }
+
+        if (handler == null) {
+            return skipQuoted(data, q, to);
+        }
+
+        // Slow path: unescape doubled quotes into the scratch buffer
+        int len = 0;
+        int p = start;
+        int next;
+        while (true) {
+            int chunkEnd = (q < 0) ? to : q;
+            len = append(data, p, chunkEnd, len);
+            if (q < 0) {
+                // Lenient: unterminated quote extends to the end of the data
+                next = to;
+                break;
+            }
+            if (q + 1 < to && data[q + 1] == quote) {
+                len = append(data, q, q + 1, len);
+                p = q + 2;
+                q = indexOf(data, p, to, quotePattern, quote);
+                continue;
+            }
+            next = q + 1;
+            break;
+        }
+
+        if (handler != null) {
+            handler.field(column, scratch, 0, len, true);
+        }
+        return next;
+    }
+
+    /**
+     * Skip the rest of a quoted field.
+     *
+     * @param q index of the first quote after the opening quote, or -1 if none
+     * @return the position right after the closing quote
+     */
+    private int skipQuoted(byte[] data, int q, int to) {
+        while (q >= 0 && q + 1 < to && data[q + 1] == quote) {
+            q = indexOf(data, q + 2, to, quotePattern, quote);
+        }
+        return (q < 0) ? to : q + 1;
+    }
+
+    /**
+     * Find the end of the current line, starting at the start of a field. Quotes are only significant at the start
+     * of a field, just like when tokenizing.
+     *
+     * @return index of the line feed that ends the line, or <code>to</code> if none
+     */
+    private int indexOfUnquotedNewline(byte[] data, int from, int to) {
+        int i = from;
+        while (true) {
+            int found = indexOfQuoteOrNewline(data, i, to);
+            if (found == to || data[found] == LF) {
+                return found;
+            }
+            if (isAtFieldStart(data, from, found)) {
+                i = skipQuoted(data, indexOf(data, found + 1, to, quotePattern, quote), to);
+            }
+            else {
+                i = found + 1;
+            }
+        }
+    }
+
+    /**
+     * @return true if only whitespace is between the start of the field and position i
+     */
+    private boolean isAtFieldStart(byte[] data, int from, int i) {
+        while (i > from && data[i - 1] != delimiter && isWhitespace(data[i - 1])) {
+            i--;
+        }
+        return i == from || data[i - 1] == delimiter;
+    }
+
+    /**
+     * @return the position of the first byte at or after pos that is not whitespace, a delimiter or a line feed
+     */
+    private int skipLeadingWhitespace(byte[] data, int pos, int to) {
+        while (pos < to && isWhitespace(data[pos]) && data[pos] != delimiter && data[pos] != LF) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Whitespace as ignored by the default csv parser, i.e. ASCII control characters and space. Bytes of multibyte
+     * sequences are negative, and never whitespace.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private int indexOfQuoteOrNewline(byte[] data, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONG_VIEW.get(data, i);
+            long found = zeroBytes(word ^ quotePattern) | zeroBytes(word ^ newlinePattern);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (data[i] == quote || data[i] == LF) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int lastSelected(boolean[] selectedColumns) {
+        for (int i = selectedColumns.length - 1; i >= 0; i--) {
+            if (selectedColumns[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int append(byte[] data, int from, int to, int len) {
+        int n = to - from;
+        if (len + n > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(len + n, scratch.length * 2));
+        }
+        System.arraycopy(data, from, scratch, len, n);
+        return len + n;
+    }
+
+    /**
+     * @return index of the first delimiter or line feed at or after <code>from</code>, or <code>to</code> if none
+     */
+    private int indexOfDelimiterOrNewline(byte[] data, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONG_VIEW.get(data, i);
+            long found = zeroBytes(word ^ delimiterPattern) | zeroBytes(word ^ newlinePattern);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (data[i] == delimiter || data[i] == LF) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return index of the first occurrence of <code>b</code> at or after <code>from</code>, or -1 if none
+     */
+    static int indexOf(byte[] data, int from, int to, long pattern, byte b) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long found = zeroBytes((long) LONG_VIEW.get(data, i) ^ pattern);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if all bytes between from and to are 7 bit ASCII
+     */
+    public static boolean isAscii(byte[] data, int from, int to) {
+        int i = from;
+        long acc = 0;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            acc |= (long) LONG_VIEW.get(data, i);
+        }
+        for (; i < to; i++) {
+            acc |= data[i];
+        }
+        return (acc & HIGHS) == 0;
+    }
+
+    /**
+     * Counts the occurrences of <code>b</code> between from and to.
+     */
+    static int count(byte[] data, int from, int to, byte b) {
+        long pattern = broadcast(b);
+        int i = from;
+        int count = 0;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long x = (long) LONG_VIEW.get(data, i) ^ pattern;
+            // Exact variant of the zero byte test, without false positives, so matches can be counted
+            count += Long.bitCount(~(((x & ~HIGHS) + ~HIGHS) | x | ~HIGHS));
+        }
+        for (; i < to; i++) {
+            if (data[i] == b) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets the high bit of the lowest byte that is zero. Higher bytes may yield false positives, so only the
+     * lowest set bit of the result is reliable.
+     */
+    private static long zeroBytes(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    static long broadcast(byte b) {
+        return (b & 0xFFL) * ONES;
+    }
+
+    private static boolean startsWith(byte[] data, int to, byte[] prefix) {
+        if (to < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,60 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits csv bytes into chunks of whole csv lines, so that the chunks can be tokenized independently.
+ *
+ * <p>Line feeds inside quoted fields are not considered line boundaries. The quote state is tracked by counting
+ * quote bytes with a single sequential SWAR pass, which is much cheaper than tokenizing.</p>
+ */
+public final class CsvChunker {
+
+    private CsvChunker() {}
+
+    /**
+     * @param data the csv bytes
+     * @param quote the quote character
+     * @param chunkBytes the minimum number of bytes per chunk. The last chunk may be smaller.
+     * @return chunk boundaries as [start0, end0 == start1, ..., endN], i.e. one more than the number of chunks
+     */
+    public static int[] split(byte[] data, byte quote, int chunkBytes) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+
+        long newlinePattern = ByteCsvTokenizer.broadcast((byte) '\n');
+        int pos = Math.min(chunkBytes, data.length);
+        boolean quoted = isOdd(ByteCsvTokenizer.count(data, 0, pos, quote));
+        while (pos < data.length) {
+            int nextLf = ByteCsvTokenizer.indexOf(data, pos, data.length, newlinePattern, (byte) '\n');
+            if (nextLf < 0) {
+                break;
+            }
+
+            quoted ^= isOdd(ByteCsvTokenizer.count(data, pos, nextLf, quote));
+            if (quoted) {
+                // Line feed inside a quoted field
+                pos = nextLf + 1;
+                continue;
+            }
+
+            int chunkStart = nextLf + 1;
+            boundaries.add(chunkStart);
+
+            // Skip ahead, counting the quotes in the skipped range to keep track of the quote state
+            pos = (int) Math.min((long) chunkStart + chunkBytes, data.length);
+            quoted = isOdd(ByteCsvTokenizer.count(data, chunkStart, pos, quote));
+        }
+
+        if (boundaries.get(boundaries.size() - 1) < data.length) {
+            boundaries.add(data.length);
+        }
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static boolean isOdd(int n) {
+        return (n & 1) == 1;
+    }
+
+}
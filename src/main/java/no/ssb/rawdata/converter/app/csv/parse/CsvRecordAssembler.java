@@ -0,0 +1,133 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+import no.ssb.rawdata.converter.app.csv.schema.FieldDecoder;
+import no.ssb.rawdata.converter.app.csv.schema.FieldDecoders;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvDataException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * {@link CsvRowHandler} that assembles tokenized csv lines into Avro item records.
+ *
+ * <p>Only the values of intercepted columns are passed through the value interceptor. Strings are only
+ * materialised for string columns and for intercepted values, and repeated values of string columns may be shared
+ * through per column {@link StringDictionary}s. Other values are decoded directly from the csv
+ * bytes. Empty values, quoted or not, are treated as <code>null</code> like the default csv parser does, and
+ * columns beyond the item schema are ignored.
+ * A line that lacks a value for a required field, e.g. because a value interceptor returned <code>null</code>, is
+ * rejected with a {@link CsvDataException}.</p>
+ *
+ * <p>If the csv columns differ from the item schema fields, e.g. because the collector schema has changed, a
+ * column mapping places each value in its item schema field.</p>
+ */
+public class CsvRecordAssembler implements CsvRowHandler {
+
+    private final Schema itemSchema;
+    private final int columnCount;
+    private final FieldDecoder[] decoders;
+    private final FieldDescriptor[] fieldDescriptors;
+    private final boolean[] interceptedColumns;
+    private final int[] columnMapping;
+    private final int[] requiredFields;
+    private final StringDictionary[] dictionaries;
+    private final ValueInterceptor valueInterceptor;
+    private final Charset charset;
+    private final boolean latin1;
+    private final Consumer<GenericRecord> sink;
+    private final ByteCharSequence view = new ByteCharSequence();
+
+    private GenericData.Record record;
+
+    /**
+     * @param interceptedColumns flags the columns whose values must be passed through the value interceptor
+     * @param columnMapping the item schema field position of each csv column, or -1 if the column should be
+     *                      ignored. If null, csv columns map directly to the item schema fields.
+     * @param requiredFields the item schema positions of the fields that must have a value
+     * @param dictionaries the string dictionary of each csv column, or null if no values should be interned.
+     *                     Only used for string columns that are not intercepted.
+     * @param latin1 true if the bytes can be decoded one byte per char, either because the charset is ISO-8859-1 or
+     *               because the data is known to be pure ASCII
+     */
+    public CsvRecordAssembler(Schema itemSchema, FieldDecoder[] decoders, FieldDescriptor[] fieldDescriptors,
+                              boolean[] interceptedColumns, int[] columnMapping, int[] requiredFields,
+                              StringDictionary[] dictionaries,
+                              ValueInterceptor valueInterceptor, Charset charset,
+                              boolean latin1, Consumer<GenericRecord> sink) {
+        this.itemSchema = itemSchema;
+        this.columnCount = (columnMapping == null) ? itemSchema.getFields().size() : columnMapping.length;
+        this.decoders = decoders;
+        this.fieldDescriptors = fieldDescriptors;
+        this.interceptedColumns = interceptedColumns;
+        this.columnMapping = columnMapping;
+        this.requiredFields = requiredFields;
+        this.dictionaries = dictionaries;
+        this.valueInterceptor = valueInterceptor;
+        this.charset = latin1 ? StandardCharsets.ISO_8859_1 : charset;
+        this.latin1 = latin1;
+        this.sink = sink;
+    }
+
+    @Override
+    public void field(int column, byte[] buf, int offset, int length, boolean quoted) {
+        if (column >= columnCount) {
+            return;
+        }
+        if (record == null) {
+            record = new GenericData.Record(itemSchema);
+        }
+        int pos = (columnMapping == null) ? column : columnMapping[column];
+        if (pos < 0 || length == 0) {
+            return;
+        }
+
+        FieldDecoder decoder = decoders[column];
+        boolean intercepted = interceptedColumns[column];
+        Object value;
+        if (decoder == FieldDecoders.STRING || intercepted) {
+            StringDictionary dictionary = (dictionaries == null || intercepted) ? null : dictionaries[column];
+            String s = (dictionary == null)
+              ? new String(buf, offset, length, charset)
+              : dictionary.get(buf, offset, length, charset);
+            if (intercepted) {
+                s = valueInterceptor.intercept(fieldDescriptors[column], s);
+            }
+            value = (decoder == FieldDecoders.STRING || s == null) ? s : decoder.decode(s);
+        }
+        else if (latin1) {
+            value = decoder.decode(view.wrap(buf, offset, length));
+        }
+        else {
+            value = decoder.decode(new String(buf, offset, length, charset));
+        }
+
+        record.put(pos, value);
+    }
+
+    @Override
+    public void endRow() {
+        if (record != null) {
+            requireValues(record, requiredFields);
+            sink.accept(record);
+            record = null;
+        }
+    }
+
+    /**
+     * @throws CsvDataException if the record lacks a value for any of the required fields
+     */
+    public static void requireValues(GenericRecord record, int[] requiredFields) {
+        for (int pos : requiredFields) {
+            if (record.get(pos) == null) {
+                throw new CsvDataException("Missing value of required field " + record.getSchema().getFields().get(pos).name());
+            }
+        }
+    }
+
+}
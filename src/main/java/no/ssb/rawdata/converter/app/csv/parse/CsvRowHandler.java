@@ -0,0 +1,27 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+/**
+ * Receives the fields of csv lines as they are tokenized by {@link ByteCsvTokenizer}.
+ */
+public interface CsvRowHandler {
+
+    /**
+     * Invoked once per field of a line, in column order.
+     *
+     * <p>The field bytes are only valid for the duration of the call, since the buffer may be a scratch
+     * buffer that is reused for the next field.</p>
+     *
+     * @param column the zero based column index
+     * @param buf buffer holding the (unquoted and unescaped) field bytes
+     * @param offset start of the field in buf
+     * @param length number of field bytes
+     * @param quoted true if the field was enclosed in quotes
+     */
+    void field(int column, byte[] buf, int offset, int length, boolean quoted);
+
+    /**
+     * Invoked when all fields of a line have been passed to {@link #field(int, byte[], int, int, boolean)}.
+     */
+    void endRow();
+
+}
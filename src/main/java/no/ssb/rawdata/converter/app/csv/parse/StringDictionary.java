@@ -0,0 +1,90 @@
+package no.ssb.rawdata.converter.app.csv.parse;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Bounded dictionary of the string values of a csv column, looked up directly by the field bytes.
+ *
+ * <p>Repeated values of low cardinality columns (e.g. municipality or status codes) resolve to one shared
+ * <code>String</code> instance, without allocating a new string per value. At most <code>maxSize</code> values are
+ * kept. When the dictionary is full, new values are decoded as usual. A dictionary that is created as adaptive is
+ * dropped altogether once full, since the column then has too high cardinality to benefit from it.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+public final class StringDictionary {
+
+    /** Longer values are not expected to repeat, and are never kept */
+    private static final int MAX_VALUE_LENGTH = 64;
+
+    private final int maxSize;
+    private final boolean adaptive;
+    private final int mask;
+    private byte[][] keys;
+    private String[] values;
+    private int size;
+
+    /**
+     * @param maxSize max number of values to keep
+     * @param adaptive if true, the dictionary is disabled once it is full
+     */
+    public StringDictionary(int maxSize, boolean adaptive) {
+        this.maxSize = maxSize;
+        this.adaptive = adaptive;
+        int capacity = Integer.highestOneBit(Math.max(maxSize, 1) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+    }
+
+    /**
+     * @return the string decoded from the given bytes, shared with earlier lookups of the same bytes if possible
+     */
+    public String get(byte[] buf, int offset, int length, Charset charset) {
+        if (keys == null || length > MAX_VALUE_LENGTH) {
+            return new String(buf, offset, length, charset);
+        }
+
+        int i = hash(buf, offset, length) & mask;
+        byte[] key;
+        while ((key = keys[i]) != null) {
+            if (Arrays.equals(key, 0, key.length, buf, offset, offset + length)) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+
+        String value = new String(buf, offset, length, charset);
+        if (size < maxSize) {
+            keys[i] = Arrays.copyOfRange(buf, offset, offset + length);
+            values[i] = value;
+            size++;
+        }
+        else if (adaptive) {
+            keys = null;
+            values = null;
+        }
+        return value;
+    }
+
+    /**
+     * @return true if values are looked up in the dictionary
+     */
+    public boolean isEnabled() {
+        return keys != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int hash(byte[] buf, int offset, int length) {
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,228 @@
+package no.ssb.rawdata.converter.app.csv.schema;
+
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvSchemaException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Observed value characteristics of the columns of a set of csv lines, used for inferring column types and
+ * nullability from sample data.
+ *
+ * <p>For each column it is tracked which of the boolean, int, long and double types all observed values can be
+ * decoded as, and whether any line lacks a value. Integer looking values with a leading zero or an explicit plus
+ * sign (e.g. postal codes, account numbers and phone numbers) are considered strings, since they would not survive
+ * a round trip through a numeric type.</p>
+ *
+ * <p>Not thread safe. Profiles collected concurrently are combined with {@link #merge(ColumnProfiles)}.</p>
+ */
+@Slf4j
+public class ColumnProfiles {
+
+    private final int columnCount;
+    private final long[] values;
+    private final boolean[] notBoolean;
+    private final boolean[] notInt;
+    private final boolean[] notLong;
+    private final boolean[] notDouble;
+    private long rows;
+
+    public ColumnProfiles(int columnCount) {
+        this.columnCount = columnCount;
+        this.values = new long[columnCount];
+        this.notBoolean = new boolean[columnCount];
+        this.notInt = new boolean[columnCount];
+        this.notLong = new boolean[columnCount];
+        this.notDouble = new boolean[columnCount];
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Observe a value of a column. Blank values are treated as <code>null</code>, and columns beyond the profiled
+     * ones are ignored.
+     */
+    public void observe(int column, CharSequence value) {
+        if (column >= columnCount) {
+            return;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') start++;
+        while (end > start && value.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return;
+        }
+
+        values[column]++;
+        if (! notBoolean[column] && ! isBooleanLiteral(value, start, end)) {
+            notBoolean[column] = true;
+        }
+        if (notDouble[column]) {
+            return;
+        }
+        if (hasLeadingZeroOrPlus(value, start, end)) {
+            notInt[column] = notLong[column] = notDouble[column] = true;
+            return;
+        }
+        if (! notLong[column]) {
+            try {
+                long l = FieldDecoders.decodeLong(value, start, end);
+                if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) {
+                    notInt[column] = true;
+                }
+                return;
+            }
+            catch (CsvSchemaException e) {
+                notInt[column] = notLong[column] = true;
+            }
+        }
+        try {
+            FieldDecoders.decodeDouble(value, start, end);
+        }
+        catch (CsvSchemaException e) {
+            notDouble[column] = true;
+        }
+    }
+
+    /**
+     * Mark the end of a csv line
+     */
+    public void endRow() {
+        rows++;
+    }
+
+    /**
+     * @return this profile, updated with the observations of the other profile
+     */
+    public ColumnProfiles merge(ColumnProfiles other) {
+        if (other.columnCount != columnCount) {
+            throw new IllegalArgumentException("Unable to merge column profiles with " + other.columnCount + " columns into " + columnCount + " columns");
+        }
+        rows += other.rows;
+        for (int i = 0; i < columnCount; i++) {
+            values[i] += other.values[i];
+            notBoolean[i] |= other.notBoolean[i];
+            notInt[i] |= other.notInt[i];
+            notLong[i] |= other.notLong[i];
+            notDouble[i] |= other.notDouble[i];
+        }
+        return this;
+    }
+
+    /**
+     * @return the narrowest type that all observed values of the column can be decoded as, or null if no values
+     * were observed
+     */
+    public DataType observedType(int column) {
+        if (values[column] == 0) {
+            return null;
+        }
+        if (! notBoolean[column]) {
+            return DataType.BOOLEAN;
+        }
+        if (! notInt[column]) {
+            return DataType.INT;
+        }
+        if (! notLong[column]) {
+            return DataType.LONG;
+        }
+        if (! notDouble[column]) {
+            return DataType.DOUBLE;
+        }
+        return DataType.STRING;
+    }
+
+    /**
+     * @return true if the column lacked a value on at least one observed line
+     */
+    public boolean isNullable(int column) {
+        return values[column] < rows;
+    }
+
+    /**
+     * Reconcile declared fields with the observed values.
+     *
+     * <p>String (or untyped) fields are tightened to the observed type. Typed fields keep their declared type,
+     * unless the observed values contradict it, in which case the field is widened to a type that fits both.
+     * Fields without any observed values are kept as declared.</p>
+     *
+     * @param tightenNullability if true, fields that had a value on every observed line are made required
+     */
+    public List<FieldInfo> reconcile(List<FieldInfo> declaredFields, boolean tightenNullability) {
+        List<FieldInfo> fields = new ArrayList<>(declaredFields.size());
+        for (int i = 0; i < declaredFields.size(); i++) {
+            FieldInfo declared = declaredFields.get(i);
+            DataType observed = (i < columnCount) ? observedType(i) : null;
+            if (observed == null) {
+                fields.add(declared);
+                continue;
+            }
+
+            DataType dataType = reconcile(declared.getDataType(), observed);
+            if (dataType != declared.getDataType()) {
+                if (declared.getDataType() == null || declared.getDataType() == DataType.STRING) {
+                    log.debug("Column {} tightened from {} to {}", declared.getName(), declared.getDataType(), dataType);
+                }
+                else {
+                    log.warn("Column {} is declared as {}, but sample values require {}", declared.getName(), declared.getDataType(), dataType);
+                }
+            }
+
+            fields.add(FieldInfo.builder()
+              .name(declared.getName())
+              .dataType(dataType)
+              .optional(declared.isOptional() && (! tightenNullability || isNullable(i)))
+              .build());
+        }
+
+        return fields;
+    }
+
+    static DataType reconcile(DataType declared, DataType observed) {
+        if (declared == null || declared == DataType.STRING || declared == observed) {
+            return observed;
+        }
+        if (isNumeric(declared) && isNumeric(observed)) {
+            return declared.compareTo(observed) >= 0 ? declared : observed;
+        }
+        return DataType.STRING;
+    }
+
+    private static boolean isNumeric(DataType dataType) {
+        return dataType == DataType.INT || dataType == DataType.LONG || dataType == DataType.DOUBLE;
+    }
+
+    private static boolean isBooleanLiteral(CharSequence s, int start, int end) {
+        int len = end - start;
+        if (len == 4) {
+            return (s.charAt(start) | 0x20) == 't'
+              && (s.charAt(start + 1) | 0x20) == 'r'
+              && (s.charAt(start + 2) | 0x20) == 'u'
+              && (s.charAt(start + 3) | 0x20) == 'e';
+        }
+        if (len == 5) {
+            return (s.charAt(start) | 0x20) == 'f'
+              && (s.charAt(start + 1) | 0x20) == 'a'
+              && (s.charAt(start + 2) | 0x20) == 'l'
+              && (s.charAt(start + 3) | 0x20) == 's'
+              && (s.charAt(start + 4) | 0x20) == 'e';
+        }
+        return false;
+    }
+
+    private static boolean hasLeadingZeroOrPlus(CharSequence s, int start, int end) {
+        char first = s.charAt(start);
+        if (first == '+') {
+            return true;
+        }
+        if (first == '-' && end - start > 1) {
+            first = s.charAt(++start);
+        }
+        return first == '0' && end - start > 1 && Character.isDigit(s.charAt(start + 1));
+    }
+
+}
@@ -1,7 +1,11 @@
 package no.ssb.rawdata.converter.app.csv.schema;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import no.ssb.rawdata.api.RawdataMessage;
 import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
@@ -9,12 +13,13 @@ import no.ssb.rawdata.converter.core.exception.RawdataConverterException;
 import no.ssb.rawdata.converter.util.RawdataMessageAdapter;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.generic.GenericRecordBuilder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -87,32 +92,118 @@ public class CsvSchemaAdapter {
     private final Schema collectionSchema;
     private final RecordType recordType;
 
+    /** Namespace of the item and collection records, or null if they have no namespace */
+    @Setter(AccessLevel.NONE)
+    private String namespace;
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private List<String> headers;
+
     public List<String> getHeaders() {
-        return getItemSchema().getFields().stream()
-          .map(f -> f.name())
-          .collect(Collectors.toList());
+        if (headers == null) {
+            List<String> names = new ArrayList<>(itemSchema.getFields().size());
+            for (Schema.Field f : itemSchema.getFields()) {
+                names.add(f.name());
+            }
+            headers = Collections.unmodifiableList(names);
+        }
+        return headers;
+    }
+
+    /**
+     * @return the typed value decoders of the item schema fields, in column order
+     */
+    public FieldDecoder[] getDecoders() {
+        FieldDecoder[] decoders = new FieldDecoder[fields.size()];
+        for (int i = 0; i < decoders.length; i++) {
+            decoders[i] = fields.get(i).getDecoder();
+        }
+        return decoders;
     }
 
     public Schema getTargetSchema() {
         return recordType == SINGLE ? itemSchema : collectionSchema;
     }
 
-    public GenericRecord toTargetRecord(Collection<GenericRecord> dataItems) {
-        if (dataItems.isEmpty()) {
-            throw new CsvSchemaException("Encountered empty CSV data");
+    public GenericRecord toTargetRecord(List<GenericRecord> dataItems) {
+        TargetRecordBuilder builder = newTargetRecordBuilder(dataItems.size());
+        dataItems.forEach(builder);
+        return builder.build();
+    }
+
+    /**
+     * Create a builder that collects csv lines into a target record of this schema's record type.
+     *
+     * @param expectedSize the expected number of csv lines, used to presize the collection array
+     */
+    public TargetRecordBuilder newTargetRecordBuilder(int expectedSize) {
+        return recordType == SINGLE
+          ? new SingleRecordBuilder()
+          : new CollectionRecordBuilder(collectionSchema, expectedSize);
+    }
+
+    /**
+     * Target record strategy for record-type=single. Fails as soon as a second line is encountered.
+     */
+    private static class SingleRecordBuilder implements TargetRecordBuilder {
+        private GenericRecord dataItem;
+
+        @Override
+        public void accept(GenericRecord item) {
+            if (dataItem != null) {
+                throw new CsvDataException("Encountered multi-line CSV data, but schema only supports a single record (record-type=single)");
+            }
+            dataItem = item;
+        }
+
+        @Override
+        public int size() {
+            return dataItem == null ? 0 : 1;
         }
 
-        if (recordType == RecordType.SINGLE) {
-            if (dataItems.size() > 1) {
-                throw new CsvSchemaException("Encountered multi-line CSV data, but schema only supports a single record (record-type=single)");
+        @Override
+        public GenericRecord build() {
+            if (dataItem == null) {
+                throw new CsvDataException("Encountered empty CSV data");
             }
-            GenericRecord gr = dataItems.stream().findFirst().get();
-            log.debug("generic record:\n"+gr.toString());
-            return gr;
+            log.debug("generic record:\n{}", dataItem);
+            return dataItem;
+        }
+    }
+
+    /**
+     * Target record strategy for record-type=collection. Lines are appended directly to the elements array.
+     */
+    private static class CollectionRecordBuilder implements TargetRecordBuilder {
+        private final Schema collectionSchema;
+        private final GenericData.Array<GenericRecord> elements;
+
+        CollectionRecordBuilder(Schema collectionSchema, int expectedSize) {
+            this.collectionSchema = collectionSchema;
+            this.elements = new GenericData.Array<>(Math.max(expectedSize, 1), collectionSchema.getField(FIELDNAME_COLLECTION).schema());
+        }
+
+        @Override
+        public void accept(GenericRecord item) {
+            elements.add(item);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
         }
-        else {
-            return new GenericRecordBuilder(collectionSchema).set(FIELDNAME_COLLECTION, dataItems).build();
 
+        @Override
+        public GenericRecord build() {
+            if (elements.isEmpty()) {
+                throw new CsvDataException("Encountered empty CSV data");
+            }
+
+            GenericData.Record collection = new GenericData.Record(collectionSchema);
+            collection.put(FIELDNAME_COLLECTION, elements);
+            return collection;
         }
     }
 
@@ -124,7 +215,30 @@ public class CsvSchemaAdapter {
           ).getSchemaMap();
 
         // Transform schema to field info
-        List<FieldInfo> fields = ((List<Map<String,Object>>) schema.getOrDefault("fields", List.of()))
+        List<FieldInfo> fields = fieldsOf(schema);
+
+        if (fields.isEmpty()) {
+            new CsvSchemaException("No fields schema metadata found in sample item. Unable to determine target avro schema.");
+        }
+
+        RecordType recordType = RecordType.from((String) schema.get("record-type")).orElse(COLLECTION);
+        return of(fields, recordType);
+    }
+
+    /**
+     * @return the columns declared by the item metadata of a rawdata message, i.e. their (mapped) names and
+     *         data types, in column order
+     */
+    public static Optional<List<FieldInfo>> columnsOf(RawdataMessage rawdataMessage, String csvItemName) {
+        return new RawdataMessageAdapter(rawdataMessage)
+          .findItemMetadata(csvItemName)
+          .map(RawdataMessageAdapter.ItemMetadata::getSchemaMap)
+          .map(CsvSchemaAdapter::fieldsOf)
+          .filter(fields -> ! fields.isEmpty());
+    }
+
+    private static List<FieldInfo> fieldsOf(Map<String, Object> schema) {
+        return ((List<Map<String,Object>>) schema.getOrDefault("fields", List.of()))
           .stream().map(f ->
             FieldInfo.builder()
               .name((String) f.get("mapped-name"))
@@ -133,35 +247,111 @@ public class CsvSchemaAdapter {
               .build()
           )
           .collect(Collectors.toList());
+    }
 
-        if (fields.isEmpty()) {
-            new CsvSchemaException("No fields schema metadata found in sample item. Unable to determine target avro schema.");
+    /**
+     * @return the number of csv lines held by a target record of either record type
+     */
+    public static int lineCountOf(GenericRecord targetRecord) {
+        Schema.Field collection = targetRecord.getSchema().getField(FIELDNAME_COLLECTION);
+        if (collection == null || collection.schema().getType() != Schema.Type.ARRAY) {
+            return 1;
         }
+        return ((Collection<?>) targetRecord.get(collection.pos())).size();
+    }
 
-        Schema itemSchema = itemSchemaOf(fields);
-        Schema collectionSchema = collectionSchemaOf(itemSchema);
-        RecordType recordType = RecordType.from((String) schema.get("record-type")).orElse(COLLECTION);
-        return new CsvSchemaAdapter(itemSchema, collectionSchema, recordType);
+    public static CsvSchemaAdapter of(List<FieldInfo> fields, RecordType recordType) {
+        return of(fields, recordType, null);
+    }
 
+    private static CsvSchemaAdapter of(List<FieldInfo> fields, RecordType recordType, String namespace) {
+        Schema itemSchema = itemSchemaOf(fields, namespace);
+        Schema collectionSchema = collectionSchemaOf(itemSchema, namespace);
+        CsvSchemaAdapter csvSchemaAdapter = new CsvSchemaAdapter(itemSchema, collectionSchema, recordType);
+        csvSchemaAdapter.setFields(fields);
+        csvSchemaAdapter.namespace = namespace;
+        return csvSchemaAdapter;
     }
 
-    private static Schema itemSchemaOf(List<FieldInfo> fields) {
-        SchemaBuilder.FieldAssembler<Schema> fieldAssembler = SchemaBuilder.record(FIELDNAME_ITEM).fields();
+    /**
+     * Narrow the item schema to a subset of the columns.
+     *
+     * @param includeColumns names of the columns to keep. If empty, all columns are kept.
+     * @param excludeColumns names of the columns to leave out
+     * @return a schema adapter with the selected columns, or this if all columns are selected
+     */
+    public CsvSchemaAdapter select(Collection<String> includeColumns, Collection<String> excludeColumns) {
+        if (includeColumns.isEmpty() && excludeColumns.isEmpty()) {
+            return this;
+        }
+
+        Set<String> unknownColumns = new HashSet<>(includeColumns);
+        unknownColumns.addAll(excludeColumns);
+        getHeaders().forEach(unknownColumns::remove);
+        if (! unknownColumns.isEmpty()) {
+            log.warn("Column projection refers to unknown columns: {}", unknownColumns);
+        }
+
+        List<FieldInfo> selectedFields = fields.stream()
+          .filter(f -> includeColumns.isEmpty() || includeColumns.contains(f.getName()))
+          .filter(f -> ! excludeColumns.contains(f.getName()))
+          .collect(Collectors.toList());
+        if (selectedFields.isEmpty()) {
+            throw new CsvSchemaException("No columns left after column projection. Columns: " + getHeaders()
+              + ", included: " + includeColumns + ", excluded: " + excludeColumns);
+        }
+
+        return withFields(selectedFields);
+    }
+
+    /**
+     * @return a schema adapter of the same record type, with the item schema derived from the given fields
+     */
+    public CsvSchemaAdapter withFields(List<FieldInfo> fields) {
+        return of(fields, recordType, namespace);
+    }
+
+    /**
+     * Place the item and collection records in a namespace, so that the schemas of several csv items can be
+     * part of the same target schema.
+     *
+     * @return a schema adapter of the same fields and record type, with the records in the given namespace
+     */
+    public CsvSchemaAdapter withNamespace(String namespace) {
+        return of(fields, recordType, namespace);
+    }
+
+    private static Schema itemSchemaOf(List<FieldInfo> fields, String namespace) {
+        SchemaBuilder.FieldAssembler<Schema> fieldAssembler = SchemaBuilder.record(FIELDNAME_ITEM).namespace(namespace).fields();
         for (FieldInfo fieldInfo : fields) {
             String name = fieldInfo.getName();
-            switch (fieldInfo.getDataType()) {
-                case INT: fieldAssembler.optionalInt(name); break;
-                case LONG: fieldAssembler.optionalLong(name); break;
-                case BOOLEAN: fieldAssembler.optionalBoolean(name); break;
-                default: fieldAssembler.optionalString(name);
+            DataType dataType = fieldInfo.getDataType() == null ? DataType.STRING : fieldInfo.getDataType();
+            if (fieldInfo.isOptional()) {
+                switch (dataType) {
+                    case INT: fieldAssembler.optionalInt(name); break;
+                    case LONG: fieldAssembler.optionalLong(name); break;
+                    case BOOLEAN: fieldAssembler.optionalBoolean(name); break;
+                    case DOUBLE: fieldAssembler.optionalDouble(name); break;
+                    default: fieldAssembler.optionalString(name);
+                }
+            }
+            else {
+                switch (dataType) {
+                    case INT: fieldAssembler.requiredInt(name); break;
+                    case LONG: fieldAssembler.requiredLong(name); break;
+                    case BOOLEAN: fieldAssembler.requiredBoolean(name); break;
+                    case DOUBLE: fieldAssembler.requiredDouble(name); break;
+                    default: fieldAssembler.requiredString(name);
+                }
             }
         }
 
         return fieldAssembler.endRecord();
     }
 
-    private static Schema collectionSchemaOf(Schema itemSchema) {
+    private static Schema collectionSchemaOf(Schema itemSchema, String namespace) {
         return SchemaBuilder.record("root")
+          .namespace(namespace)
           .fields()
           .name(FIELDNAME_COLLECTION).type().array().items(itemSchema).noDefault()
           .endRecord();
@@ -192,5 +382,20 @@ public class CsvSchemaAdapter {
         }
     }
 
+    /**
+     * Signals csv data that does not fit the schema. The stack trace is not filled in, since the cause is the
+     * data rather than the code path, and malformed data may be frequent.
+     */
+    public static class CsvDataException extends CsvSchemaException {
+        public CsvDataException(String msg) {
+            super(msg);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
 
 }
\ No newline at end of file
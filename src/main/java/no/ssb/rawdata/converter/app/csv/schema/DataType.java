@@ -31,4 +31,22 @@ public enum DataType {
         throw new IllegalArgumentException("No DataType found matching name '" + s + "'");
     }
 
+    /**
+     * @return true if every value of the other data type can be held by this data type, e.g. an INT value by a
+     *         LONG field. Values of an unknown (null) data type are assumed to fit.
+     */
+    public boolean canHold(DataType other) {
+        if (other == null || other == this || this == STRING) {
+            return true;
+        }
+        switch (this) {
+            case LONG:
+                return other == INT;
+            case DOUBLE:
+                return other == INT || other == LONG;
+            default:
+                return false;
+        }
+    }
+
 }
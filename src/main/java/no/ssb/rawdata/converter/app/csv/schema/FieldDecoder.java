@@ -0,0 +1,21 @@
+package no.ssb.rawdata.converter.app.csv.schema;
+
+/**
+ * Decodes a single csv value into the Avro representation of a {@link DataType}.
+ *
+ * <p>Decoders read directly from a character buffer, so that numeric and boolean values never need to be
+ * materialised as an intermediate {@link String}. Empty values are decoded as <code>null</code>.</p>
+ */
+@FunctionalInterface
+public interface FieldDecoder {
+
+    /**
+     * Decode the characters between <code>start</code> (inclusive) and <code>end</code> (exclusive).
+     */
+    Object decode(CharSequence chars, int start, int end);
+
+    default Object decode(CharSequence value) {
+        return value == null ? null : decode(value, 0, value.length());
+    }
+
+}
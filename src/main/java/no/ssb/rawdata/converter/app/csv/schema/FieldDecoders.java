@@ -0,0 +1,282 @@
+package no.ssb.rawdata.converter.app.csv.schema;
+
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvDataException;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvSchemaException;
+
+/**
+ * Typed {@link FieldDecoder}s for the supported {@link DataType}s.
+ *
+ * <p>Numeric and boolean values are parsed straight from the character buffer. Leading and trailing blanks
+ * are ignored, and blank values are decoded as <code>null</code>. Avro generic records hold values as objects,
+ * so decoded primitives are boxed once when handed over to the record.</p>
+ *
+ * <p>The decoders are used by the byte tokenizer and by schema inference. The default csv parser converts the
+ * values of typed columns itself, to the same values.</p>
+ */
+public final class FieldDecoders {
+
+    private FieldDecoders() {}
+
+    /** Max number of decimal digits that is guaranteed to fit in the 53 bit mantissa of a double */
+    private static final int MAX_EXACT_DOUBLE_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+      1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    public static final FieldDecoder STRING = (chars, start, end) ->
+      (start == end) ? null : chars.subSequence(start, end).toString();
+
+    public static final FieldDecoder INT = FieldDecoders::decodeInt;
+
+    public static final FieldDecoder LONG = FieldDecoders::decodeLong;
+
+    public static final FieldDecoder DOUBLE = FieldDecoders::decodeDouble;
+
+    public static final FieldDecoder BOOLEAN = FieldDecoders::decodeBoolean;
+
+    public static FieldDecoder of(DataType dataType) {
+        if (dataType == null) {
+            return STRING;
+        }
+
+        switch (dataType) {
+            case INT: return INT;
+            case LONG: return LONG;
+            case DOUBLE: return DOUBLE;
+            case BOOLEAN: return BOOLEAN;
+            default: return STRING;
+        }
+    }
+
+    static Integer decodeInt(CharSequence chars, int start, int end) {
+        Long value = decodeLong(chars, start, end);
+        if (value == null) {
+            return null;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalidValue(chars, start, end, DataType.INT);
+        }
+
+        return (int) (long) value;
+    }
+
+    static Long decodeLong(CharSequence chars, int start, int end) {
+        while (start < end && chars.charAt(start) <= ' ') start++;
+        while (end > start && chars.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return null;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char first = chars.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                throw invalidValue(chars, start, end, DataType.LONG);
+            }
+        }
+
+        // Accumulate negatively, since the magnitude of Long.MIN_VALUE is larger than Long.MAX_VALUE
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw invalidValue(chars, start, end, DataType.LONG);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw invalidValue(chars, start, end, DataType.LONG);
+            }
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    static Double decodeDouble(CharSequence chars, int start, int end) {
+        while (start < end && chars.charAt(start) <= ' ') start++;
+        while (end > start && chars.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return null;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char first = chars.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // leading zeros do not count as significant digits
+                    if (seenPoint) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (++digits > MAX_EXACT_DOUBLE_DIGITS) {
+                    return parseDoubleSlow(chars, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    scale--;
+                }
+            }
+            else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            }
+            else {
+                break;
+            }
+        }
+
+        if (i < end) {
+            char c = chars.charAt(i);
+            if ((c != 'e' && c != 'E') || !anyDigit || ! isExponent(chars, i + 1, end)) {
+                throw invalidValue(chars, start, end, DataType.DOUBLE);
+            }
+            Long exponent = decodeLongOrNull(chars, i + 1, end);
+            if (exponent == null || Math.abs(exponent) > 1000) {
+                return parseDoubleSlow(chars, start, end);
+            }
+            scale += exponent;
+        }
+        else if (!anyDigit) {
+            throw invalidValue(chars, start, end, DataType.DOUBLE);
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0d;
+        }
+        else if (scale == 0) {
+            value = mantissa;
+        }
+        else if (scale > 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        }
+        else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        }
+        else {
+            return parseDoubleSlow(chars, start, end);
+        }
+
+        return negative ? -value : value;
+    }
+
+    static Boolean decodeBoolean(CharSequence chars, int start, int end) {
+        while (start < end && chars.charAt(start) <= ' ') start++;
+        while (end > start && chars.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return null;
+        }
+
+        // Same semantics as Boolean.parseBoolean: anything other than "true" is false
+        if (end - start != 4) {
+            return Boolean.FALSE;
+        }
+        return (chars.charAt(start) | 0x20) == 't'
+          && (chars.charAt(start + 1) | 0x20) == 'r'
+          && (chars.charAt(start + 2) | 0x20) == 'u'
+          && (chars.charAt(start + 3) | 0x20) == 'e';
+    }
+
+    private static Long decodeLongOrNull(CharSequence chars, int start, int end) {
+        try {
+            return decodeLong(chars, start, end);
+        }
+        catch (CsvSchemaException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the chars are an optionally signed exponent, e.g. <code>-5</code>
+     */
+    private static boolean isExponent(CharSequence chars, int start, int end) {
+        if (start < end && (chars.charAt(start) == '-' || chars.charAt(start) == '+')) {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the chars are a plain decimal number: <code>[+-]?digits[.digits][(e|E)[+-]digits]</code>,
+     *         where either the integer or the fraction digits may be left out. Java literal forms such as
+     *         <code>12F</code>, <code>0x1p3</code>, <code>NaN</code> and <code>Infinity</code> are not.
+     */
+    static boolean isPlainDecimal(CharSequence chars, int start, int end) {
+        int i = start;
+        if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+            i++;
+        }
+        boolean anyDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+            }
+            else if (c == '.' && ! seenPoint) {
+                seenPoint = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (! anyDigit) {
+            return false;
+        }
+        if (i == end) {
+            return true;
+        }
+        char c = chars.charAt(i);
+        return (c == 'e' || c == 'E') && isExponent(chars, i + 1, end);
+    }
+
+    /**
+     * Parse a plain decimal number that is out of the range of the fast path, e.g. with more significant
+     * digits than a double holds exactly.
+     */
+    private static Double parseDoubleSlow(CharSequence chars, int start, int end) {
+        if (! isPlainDecimal(chars, start, end)) {
+            throw invalidValue(chars, start, end, DataType.DOUBLE);
+        }
+        try {
+            return Double.parseDouble(chars.subSequence(start, end).toString());
+        }
+        catch (NumberFormatException e) {
+            throw invalidValue(chars, start, end, DataType.DOUBLE);
+        }
+    }
+
+    private static CsvSchemaException invalidValue(CharSequence chars, int start, int end, DataType dataType) {
+        return new CsvDataException("Unable to decode '" + chars.subSequence(start, end) + "' as " + dataType);
+    }
+
+}
@@ -1,17 +1,25 @@
 package no.ssb.rawdata.converter.app.csv.schema;
 
 import lombok.Builder;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.ToString;
 
 // TODO: Move to core
 
 @Builder
 @Getter
+@EqualsAndHashCode
+@ToString
 public class FieldInfo {
     private String name;
     private DataType dataType;
     private boolean optional;
 
+    public FieldDecoder getDecoder() {
+        return FieldDecoders.of(dataType);
+    }
+
     public static FieldInfo optionalString(String name) {
         return FieldInfo.builder()
           .name(name)
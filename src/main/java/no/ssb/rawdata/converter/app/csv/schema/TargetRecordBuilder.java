@@ -0,0 +1,31 @@
+package no.ssb.rawdata.converter.app.csv.schema;
+
+import org.apache.avro.generic.GenericRecord;
+
+import java.util.function.Consumer;
+
+/**
+ * Incrementally collects converted csv lines into a target record.
+ *
+ * <p>Lines are appended as they are parsed, so no intermediate list of all lines is needed before the target
+ * record can be built.</p>
+ */
+public interface TargetRecordBuilder extends Consumer<GenericRecord> {
+
+    /**
+     * Append a converted csv line
+     */
+    @Override
+    void accept(GenericRecord dataItem);
+
+    /**
+     * @return the number of csv lines appended so far
+     */
+    int size();
+
+    /**
+     * Build the target record from the appended csv lines.
+     */
+    GenericRecord build();
+
+}
@@ -0,0 +1,275 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvFormat;
+import no.ssb.rawdata.converter.app.csv.parse.ByteCsvTokenizer;
+import no.ssb.rawdata.converter.app.csv.parse.CsvChunker;
+import no.ssb.rawdata.converter.app.csv.parse.CsvRowHandler;
+import no.ssb.rawdata.converter.core.convert.ConversionResult;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvConfig;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ByteCsvTokenizerTest {
+
+    @Test
+    void shouldTokenizeSimpleLines() {
+        assertEquals(List.of(
+          List.of("a", "b", "c"),
+          List.of("1", "", "3")
+        ), tokenize("a;b;c\n1;;3\n", format(false)));
+    }
+
+    @Test
+    void shouldHandleQuotedFields() {
+        assertEquals(List.of(
+          List.of("semi;colon", "multi\nline", "say \"hi\"", ""),
+          List.of("x", "long field with \"\"quotes\"\" and more text", "y", "z")
+        ), tokenize("\"semi;colon\";\"multi\nline\";\"say \"\"hi\"\"\";\"\"\r\nx;\"long field with \"\"\"\"quotes\"\"\"\" and more text\";y;z", format(false)));
+    }
+
+    @Test
+    void shouldIgnoreWhitespaceAroundFields() {
+        assertEquals(List.of(
+          List.of("a", "b c", "", " quoted ", "d"),
+          List.of("1", "", "3", "", "")
+        ), tokenize("  a ;b c\t; ; \" quoted \" ;d \r\n1;;3\t;\"\";", format(false)));
+    }
+
+    @Test
+    void shouldTreatQuoteAfterWhitespaceAsQuotedField() {
+        assertEquals(List.of(
+          List.of("a", "multi\nline;", "b")
+        ), tokenize("a; \"multi\nline;\";b\n", format(false)));
+        byte[] data = "a; \"multi\nline\";b\nc;d;e\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(List.of(List.of("a"), List.of("c")),
+          tokenize(data, 0, data.length, format(false), new boolean[] {true, false, false}));
+    }
+
+    @Test
+    void shouldConvertLikeDefaultParser() {
+        String csv = "1;plain;1.5\r\n"
+          + "2;\"quoted; with delimiter\";2.5\r\n"
+          + "3;\"escaped \"\"quote\"\"\";\r\n"
+          + "4;;4.5\r\n"
+          + "5;\"multi\nline\";5.5\r\n"
+          + "6;blåbærsyltetøy;6.5\r\n"
+          + " 7 ;  padded\t; 7.5 \r\n"
+          + "8; \" quoted padding \" ;\"\"\r\n"
+          + "9;\"\";9.5";
+        RawdataMessage message = csvMessage("1", csv, "id:INT", "name", "amount:DOUBLE");
+
+        List<GenericRecord> converted = new ArrayList<>();
+        for (CsvRawdataConverterConfig.Tokenizer tokenizer : CsvRawdataConverterConfig.Tokenizer.values()) {
+            CsvRawdataConverterConfig config = csvConfig();
+            config.setTokenizer(tokenizer);
+            CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+            converter.init(List.of(message));
+            ConversionResult result = converter.convert(message);
+            assertTrue(result.getFailures().isEmpty(), tokenizer.name());
+            converted.add((GenericRecord) result.getGenericRecord().get("data"));
+        }
+
+        assertEquals(converted.get(0).toString(), converted.get(1).toString());
+        List<GenericRecord> items = (List<GenericRecord>) converted.get(1).get("elements");
+        assertEquals(9, items.size());
+        assertEquals("quoted; with delimiter", items.get(1).get("name").toString());
+        assertEquals("escaped \"quote\"", items.get(2).get("name").toString());
+        assertNull(items.get(3).get("name"));
+        assertEquals("multi\nline", items.get(4).get("name").toString());
+        assertEquals("blåbærsyltetøy", items.get(5).get("name").toString());
+        assertEquals(7, items.get(6).get("id"));
+        assertEquals("padded", items.get(6).get("name").toString());
+        assertEquals(7.5, items.get(6).get("amount"));
+        assertEquals(" quoted padding ", items.get(7).get("name").toString());
+        assertNull(items.get(7).get("amount"));
+        assertNull(items.get(8).get("name"));
+    }
+
+    @Test
+    void shouldSkipHeaderBomAndEmptyLines() {
+        String csv = "\uFEFFcol1;col2\r\n\r\none;two\r\n\nthree;four\r\n";
+        assertEquals(List.of(
+          List.of("one", "two"),
+          List.of("three", "four")
+        ), tokenize(csv, format(true)));
+    }
+
+    @Test
+    void shouldKeepTrailingEmptyField() {
+        assertEquals(List.of(List.of("a", "b", "")), tokenize("a;b;", format(false)));
+    }
+
+    @Test
+    void shouldDecodeLatin1() {
+        ByteCsvFormat format = ByteCsvFormat.resolve(Map.of("delimiters", ";"), "ISO-8859-1").orElseThrow();
+        assertEquals(List.of(List.of("Bærum", "Østfold")), tokenize("Bærum;Østfold", format));
+    }
+
+    @Test
+    void shouldDetectAscii() {
+        byte[] ascii = "plain ascii text that is longer than a word".getBytes(StandardCharsets.UTF_8);
+        byte[] utf8 = "plain ascii text that is longer than a wørd".getBytes(StandardCharsets.UTF_8);
+        assertTrue(ByteCsvTokenizer.isAscii(ascii, 0, ascii.length));
+        assertEquals(false, ByteCsvTokenizer.isAscii(utf8, 0, utf8.length));
+    }
+
+    @Test
+    void shouldSplitAtLineBoundariesOutsideQuotes() {
+        StringBuilder csv = new StringBuilder("h1;h2\n");
+        for (int i = 0; i < 500; i++) {
+            csv.append(i).append(i % 7 == 0 ? ";\"multi\nline \"\"quoted\"\"\n\"\n" : ";plain\n");
+        }
+        byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+        ByteCsvFormat format = format(true);
+
+        int[] boundaries = CsvChunker.split(data, format.getQuote(), 100);
+        assertTrue(boundaries.length > 10);
+        assertEquals(0, boundaries[0]);
+        assertEquals(data.length, boundaries[boundaries.length - 1]);
+
+        List<List<String>> chunked = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            chunked.addAll(tokenize(data, boundaries[i], boundaries[i + 1], format));
+        }
+        assertEquals(tokenize(data, 0, data.length, format), chunked);
+        assertEquals(500, chunked.size());
+    }
+
+    @Test
+    void shouldOnlyPassSelectedColumns() {
+        String csv = "h1;h2;h3;h4\n"
+          + "a;\"b \"\"x\"\"\";c;d\n"
+          + "e;f;\"g\nh;\"\"i\"\"\";j\r\n"
+          + "k;l\n"
+          + "m;n;o\"p;\"q\nr\"\n";
+        byte[] data = csv.getBytes(StandardCharsets.UTF_8);
+        assertEquals(List.of(
+          List.of("a", "c"),
+          List.of("e", "g\nh;\"i\""),
+          List.of("k"),
+          List.of("m", "o\"p")
+        ), tokenize(data, 0, data.length, format(true), new boolean[] {true, false, true}));
+        assertEquals(List.of(
+          List.of("a"),
+          List.of("e"),
+          List.of("k"),
+          List.of("m")
+        ), tokenize(data, 0, data.length, format(true), new boolean[] {true}));
+    }
+
+    @Test
+    void shouldStopAfterMaxRows() {
+        byte[] data = "h1;h2\n\"a\nb\";c\nd;e\nf;g\n".getBytes(StandardCharsets.UTF_8);
+        List<String> fields = new ArrayList<>();
+        int rows = new ByteCsvTokenizer(format(true)).tokenize(data, 0, data.length, new CsvRowHandler() {
+            @Override
+            public void field(int column, byte[] buf, int offset, int length, boolean quoted) {
+                fields.add(new String(buf, offset, length, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void endRow() {}
+        }, 2);
+        assertEquals(2, rows);
+        assertEquals(List.of("a\nb", "c", "d", "e"), fields);
+    }
+
+    @Test
+    void shouldTokenizeCompressedStreamAcrossWindows() throws Exception {
+        StringBuilder csv = new StringBuilder("\uFEFFh1;h2\n");
+        for (int i = 0; i < 40_000; i++) {
+            csv.append(i).append(i % 13 == 0 ? ";\"multi\nline \"\"quoted\"\"; value\"\n" : ";plain value ø\n");
+        }
+        byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data);
+        }
+
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        int count;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            count = new ByteCsvTokenizer(format(true)).tokenize(in, (window, from, to) -> new CsvRowHandler() {
+                @Override
+                public void field(int column, byte[] buf, int offset, int length, boolean quoted) {
+                    row.add(new String(buf, offset, length, StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void endRow() {
+                    rows.add(new ArrayList<>(row));
+                    row.clear();
+                }
+            });
+        }
+
+        assertTrue(data.length > 3 * 256 * 1024);
+        assertEquals(40_000, count);
+        assertEquals(tokenize(data, 0, data.length, format(true)), rows);
+    }
+
+    @Test
+    void shouldFallBackForUnsupportedSettings() {
+        assertTrue(ByteCsvFormat.resolve(Map.of("delimiters", ";,"), "UTF-8").isEmpty());
+        assertTrue(ByteCsvFormat.resolve(Map.of(), "UTF-8").isEmpty());
+        assertTrue(ByteCsvFormat.resolve(Map.of("delimiters", ";"), "UTF-16").isEmpty());
+    }
+
+    private static ByteCsvFormat format(boolean headerPresent) {
+        return ByteCsvFormat.builder()
+          .delimiter((byte) ';')
+          .headerPresent(headerPresent)
+          .build();
+    }
+
+    private static List<List<String>> tokenize(String csv, ByteCsvFormat format) {
+        byte[] data = csv.getBytes(format.getCharset());
+        return tokenize(data, 0, data.length, format);
+    }
+
+    private static List<List<String>> tokenize(byte[] data, int from, int to, ByteCsvFormat format) {
+        return tokenize(data, from, to, format, null);
+    }
+
+    private static List<List<String>> tokenize(byte[] data, int from, int to, ByteCsvFormat format, boolean[] selectedColumns) {
+        Charset charset = format.getCharset();
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        new ByteCsvTokenizer(format, selectedColumns).tokenize(data, from, to, new CsvRowHandler() {
+            @Override
+            public void field(int column, byte[] buf, int offset, int length, boolean quoted) {
+                row.add(new String(buf, offset, length, charset));
+            }
+
+            @Override
+            public void endRow() {
+                rows.add(new ArrayList<>(row));
+                row.clear();
+            }
+        });
+        return rows;
+    }
+
+}
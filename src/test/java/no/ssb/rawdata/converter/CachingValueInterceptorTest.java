@@ -0,0 +1,82 @@
+package no.ssb.rawdata.converter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.rawdata.converter.app.csv.CachingValueInterceptor;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CachingValueInterceptorTest {
+
+    @Test
+    void shouldMemoizeTransformedValuesOnly() {
+        AtomicInteger invocations = new AtomicInteger();
+        CachingValueInterceptor interceptor = new CachingValueInterceptor((field, value) -> {
+            invocations.incrementAndGet();
+            return field.getName().equals("secret") ? "pseudo-" + value : value;
+        }, 100, new SimpleMeterRegistry(), "test.cache", "test-job");
+
+        FieldDescriptor secret = new FieldDescriptor("/secret");
+        FieldDescriptor plain = new FieldDescriptor("/plain");
+
+        assertEquals("pseudo-123", interceptor.intercept(secret, "123"));
+        assertEquals("pseudo-123", interceptor.intercept(secret, new String("123")));
+        assertEquals(1, invocations.get());
+
+        assertEquals("abc", interceptor.intercept(plain, "abc"));
+        assertEquals("abc", interceptor.intercept(plain, "abc"));
+        assertEquals(3, invocations.get());
+    }
+
+    @Test
+    void singleUntouchedValue_shouldNotTurnOffCaching() {
+        AtomicInteger invocations = new AtomicInteger();
+        CachingValueInterceptor interceptor = new CachingValueInterceptor((field, value) -> {
+            invocations.incrementAndGet();
+            return value.equals("0") ? value : "pseudo-" + value;
+        }, 100, new SimpleMeterRegistry(), "test.cache", "test-job");
+
+        FieldDescriptor secret = new FieldDescriptor("/secret");
+        assertEquals("0", interceptor.intercept(secret, "0"));
+        assertEquals("pseudo-123", interceptor.intercept(secret, "123"));
+        assertEquals("pseudo-123", interceptor.intercept(secret, new String("123")));
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void untouchedField_shouldBypassCacheAfterSampling() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingValueInterceptor interceptor = new CachingValueInterceptor((field, value) -> value,
+          100, meterRegistry, "test.cache", "test-job");
+
+        FieldDescriptor plain = new FieldDescriptor("/plain");
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("v" + i, interceptor.intercept(plain, "v" + i));
+        }
+        double misses = cacheMisses(meterRegistry);
+        interceptor.intercept(plain, "other");
+        assertEquals(misses, cacheMisses(meterRegistry));
+    }
+
+    private static double cacheMisses(SimpleMeterRegistry meterRegistry) {
+        return meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count();
+    }
+
+    @Test
+    void closedInterceptor_shouldRemoveCacheMetrics() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingValueInterceptor interceptor = new CachingValueInterceptor((field, value) -> value,
+          100, meterRegistry, "test.cache", "test-job");
+        new CachingValueInterceptor((field, value) -> value, 100, meterRegistry, "test.cache", "other-job");
+
+        interceptor.close();
+        assertTrue(meterRegistry.find("cache.gets").tag("job", "test-job").meters().isEmpty());
+        assertFalse(meterRegistry.find("cache.gets").tag("job", "other-job").meters().isEmpty());
+    }
+
+}
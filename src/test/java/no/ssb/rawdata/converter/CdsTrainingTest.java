@@ -0,0 +1,16 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.converter.app.csv.CdsTraining;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CdsTrainingTest {
+
+    @Test
+    void syntheticConversion_shouldConvertAllLines() {
+        // 50 single line and 50 collection messages of 100 lines, per tokenizer
+        assertEquals(2 * (50 + 50 * 100), CdsTraining.convertSyntheticMessages());
+    }
+
+}
@@ -0,0 +1,97 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.converter.app.csv.schema.ColumnProfiles;
+import no.ssb.rawdata.converter.app.csv.schema.DataType;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnProfilesTest {
+
+    private static ColumnProfiles profile(String[]... lines) {
+        ColumnProfiles profiles = new ColumnProfiles(lines[0].length);
+        for (String[] line : lines) {
+            for (int col = 0; col < line.length; col++) {
+                if (line[col] != null) {
+                    profiles.observe(col, line[col]);
+                }
+            }
+            profiles.endRow();
+        }
+        return profiles;
+    }
+
+    @Test
+    void observedType_shouldBeNarrowestTypeThatFitsAllValues() {
+        ColumnProfiles profiles = profile(
+          new String[] {"true", "1", "1", "1.5", "0150", "x", "+4722", null},
+          new String[] {"FALSE", "-2", "3000000000", "2", "0151", "1", "+4723", null}
+        );
+
+        assertEquals(DataType.BOOLEAN, profiles.observedType(0));
+        assertEquals(DataType.INT, profiles.observedType(1));
+        assertEquals(DataType.LONG, profiles.observedType(2));
+        assertEquals(DataType.DOUBLE, profiles.observedType(3));
+        assertEquals(DataType.STRING, profiles.observedType(4));
+        assertEquals(DataType.STRING, profiles.observedType(5));
+        assertEquals(DataType.STRING, profiles.observedType(6));
+        assertNull(profiles.observedType(7));
+    }
+
+    @Test
+    void javaLiteralForms_shouldBeObservedAsStrings() {
+        ColumnProfiles profiles = profile(
+          new String[] {"10D", "3F", "NaN", "1.5"},
+          new String[] {"12", "4", "1", "1e 5"}
+        );
+
+        for (int col = 0; col < 4; col++) {
+            assertEquals(DataType.STRING, profiles.observedType(col));
+        }
+    }
+
+    @Test
+    void merge_shouldCombineObservations() {
+        ColumnProfiles profiles = profile(new String[] {"1", "1"})
+          .merge(profile(new String[] {"1.5", " "}));
+
+        assertEquals(2, profiles.getRows());
+        assertEquals(DataType.DOUBLE, profiles.observedType(0));
+        assertFalse(profiles.isNullable(0));
+        assertTrue(profiles.isNullable(1));
+    }
+
+    @Test
+    void reconcile_shouldTightenStringsAndWidenContradictedTypes() {
+        ColumnProfiles profiles = profile(
+          new String[] {"1", "3000000000", "abc", "1", null},
+          new String[] {"2", "1", "def", "", null}
+        );
+        List<FieldInfo> declared = List.of(
+          FieldInfo.optionalString("a"),
+          FieldInfo.optionalInt("b"),
+          FieldInfo.optionalLong("c"),
+          FieldInfo.optionalString("d"),
+          FieldInfo.optionalDouble("e")
+        );
+
+        List<FieldInfo> fields = profiles.reconcile(declared, true);
+        assertEquals(DataType.INT, fields.get(0).getDataType());
+        assertFalse(fields.get(0).isOptional());
+        assertEquals(DataType.LONG, fields.get(1).getDataType());
+        assertEquals(DataType.STRING, fields.get(2).getDataType());
+        assertEquals(DataType.INT, fields.get(3).getDataType());
+        assertTrue(fields.get(3).isOptional());
+        assertEquals(DataType.DOUBLE, fields.get(4).getDataType());
+        assertTrue(fields.get(4).isOptional());
+
+        assertTrue(profiles.reconcile(declared, false).get(0).isOptional());
+    }
+
+}
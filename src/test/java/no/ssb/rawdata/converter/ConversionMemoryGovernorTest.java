@@ -0,0 +1,92 @@
+package no.ssb.rawdata.converter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ssb.rawdata.converter.app.csv.ConversionMemoryGovernor;
+import no.ssb.rawdata.converter.app.csv.ConversionMemoryGovernor.Admission;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter.CsvRawdataConverterException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionMemoryGovernorTest {
+
+    @Test
+    void conversionExceedingBudget_shouldWaitForRelease() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConversionMemoryGovernor governor = new ConversionMemoryGovernor(100, registry);
+        Admission first = governor.admit(60);
+        assertEquals(60, registry.get("rawdata.converter.csv.memory.used").gauge().value());
+
+        CompletableFuture<Admission> second = CompletableFuture.supplyAsync(() -> governor.admit(60));
+        assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, registry.get("rawdata.converter.csv.memory.waiting").gauge().value());
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, registry.get("rawdata.converter.csv.memory.used").gauge().value());
+        assertEquals(2, registry.get("rawdata.converter.csv.memory.wait").timer().count());
+    }
+
+    @Test
+    void interruptedWait_shouldFailAndGiveUpTurn() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConversionMemoryGovernor governor = new ConversionMemoryGovernor(100, registry);
+        Admission first = governor.admit(60);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                governor.admit(60).close();
+            }
+            catch (RuntimeException e) {
+                failure.set(e);
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        waiter.start();
+        while (registry.get("rawdata.converter.csv.memory.waiting").gauge().value() < 1) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<Admission> third = CompletableFuture.supplyAsync(() -> governor.admit(60));
+        assertThrows(TimeoutException.class, () -> third.get(100, TimeUnit.MILLISECONDS));
+
+        waiter.interrupt();
+        waiter.join(5000);
+        assertTrue(failure.get() instanceof CsvRawdataConverterException, String.valueOf(failure.get()));
+        assertTrue(interrupted.get());
+
+        first.close();
+        third.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, registry.get("rawdata.converter.csv.memory.used").gauge().value());
+        assertEquals(0, registry.get("rawdata.converter.csv.memory.waiting").gauge().value());
+    }
+
+    @Test
+    void conversionLargerThanBudget_shouldBeAdmittedAlone() {
+        ConversionMemoryGovernor governor = new ConversionMemoryGovernor(100, null);
+        try (Admission admission = governor.admit(1000)) {
+            assertTrue(governor.isEnabled());
+        }
+        try (Admission admission = ConversionMemoryGovernor.UNLIMITED.admit(Long.MAX_VALUE)) {
+            assertEquals(Admission.NONE, admission);
+        }
+    }
+
+    @Test
+    void estimate_shouldGrowWithCompressionAndColumns() {
+        long plain = ConversionMemoryGovernor.estimateHeapBytes(1_000_000, 10, false);
+        assertTrue(plain > 2_000_000);
+        assertTrue(ConversionMemoryGovernor.estimateHeapBytes(1_000_000, 10, true) > plain);
+        assertTrue(ConversionMemoryGovernor.estimateHeapBytes(1_000_000, 2, false) > plain);
+    }
+
+}
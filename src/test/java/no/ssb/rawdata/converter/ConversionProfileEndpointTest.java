@@ -0,0 +1,46 @@
+package no.ssb.rawdata.converter;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.exceptions.HttpStatusException;
+import io.micronaut.test.annotation.MicronautTest;
+import no.ssb.rawdata.converter.app.csv.ConversionProfileEndpoint;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@MicronautTest
+@Property(name = "endpoints.conversion-profile.enabled", value = "true")
+public class ConversionProfileEndpointTest {
+
+    @Inject
+    ConversionProfileEndpoint endpoint;
+
+    private static Map<String, Object> jobConfig(Map<String, Object> rawdataSource) {
+        return Map.of("rawdataSource", rawdataSource);
+    }
+
+    @Test
+    void tooManyMessages_shouldBeRejected() {
+        HttpStatusException e = assertThrows(HttpStatusException.class, () ->
+          endpoint.profile(jobConfig(Map.of("name", "test", "topic", "test")), 1_000_000));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    }
+
+    @Test
+    void encryptedRawdataSource_shouldBeRejected() {
+        Map<String, Object> rawdataSource = Map.of(
+          "name", "test",
+          "topic", "test",
+          "encryptionKeyId", "rawdata-encryption-credentials-dummy-key",
+          "encryptionSalt", "somesalt"
+        );
+        HttpStatusException e = assertThrows(HttpStatusException.class, () -> endpoint.profile(jobConfig(rawdataSource), 10));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    }
+
+}
@@ -0,0 +1,60 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvColumns;
+import no.ssb.rawdata.converter.app.csv.schema.DataType;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class CsvColumnsTest {
+
+    @Test
+    void sameMessage_shouldParseManifestOnce() {
+        CsvColumns columns = new CsvColumns("entry");
+        RawdataMessage message = csvMessage("1", "1;a\n", "id", "name");
+
+        Optional<List<FieldInfo>> first = columns.of(message);
+        assertEquals(Optional.of(List.of(column("id", DataType.STRING), column("name", DataType.STRING))), first);
+        assertSame(first, columns.of(message));
+    }
+
+    @Test
+    void otherMessages_shouldParseTheirOwnManifest() {
+        CsvColumns columns = new CsvColumns("entry");
+        Optional<List<FieldInfo>> first = columns.of(csvMessage("1", "1;a\n", "id", "name"));
+        Optional<List<FieldInfo>> second = columns.of(csvMessage("2", "1;a;b\n", "id", "name", "other"));
+
+        assertNotSame(first, second);
+        assertEquals(Optional.of(List.of(column("id", DataType.STRING), column("name", DataType.STRING), column("other", DataType.STRING))), second);
+    }
+
+    @Test
+    void changedDataType_shouldMakeColumnsDiffer() {
+        CsvColumns columns = new CsvColumns("entry");
+        Optional<List<FieldInfo>> first = columns.of(csvMessage("1", "1;a\n", "id:INT", "name"));
+        Optional<List<FieldInfo>> second = columns.of(csvMessage("2", "x;a\n", "id", "name"));
+
+        assertEquals(Optional.of(List.of(column("id", DataType.INT), column("name", DataType.STRING))), first);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void messageWithoutItemMetadata_shouldHaveNoColumnNames() {
+        CsvColumns columns = new CsvColumns("detail");
+        assertEquals(Optional.empty(), columns.of(csvMessage("1", "1;a\n", "id", "name")));
+    }
+
+    private static FieldInfo column(String name, DataType dataType) {
+        return FieldInfo.builder().name(name).dataType(dataType).optional(true).build();
+    }
+
+}
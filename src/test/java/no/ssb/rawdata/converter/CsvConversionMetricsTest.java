@@ -0,0 +1,113 @@
+package no.ssb.rawdata.converter;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+import no.ssb.rawdata.converter.app.csv.CsvConversionMetrics;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static no.ssb.rawdata.converter.CsvTestFixtures.bytes;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvConfig;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CsvConversionMetricsTest {
+
+    @Test
+    void meters_shouldBeTaggedWithJobName() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CsvConversionMetrics metrics = new CsvConversionMetrics(registry, "some-job");
+
+        ValueInterceptor interceptor = metrics.timed((field, value) -> value.toUpperCase());
+        assertEquals("ABC", interceptor.intercept(new FieldDescriptor("/name"), "abc"));
+        interceptor.intercept(new FieldDescriptor("/name"), "def");
+
+        metrics.recordParse(System.nanoTime(), 100, 3);
+        metrics.recordParse(System.nanoTime(), 50, 2);
+        metrics.recordManifest(System.nanoTime());
+        metrics.recordFailure();
+
+        assertEquals(150d, registry.get("rawdata.converter.csv.bytes.in").tag("job", "some-job").counter().count());
+        assertEquals(5d, registry.get("rawdata.converter.csv.rows.out").tag("job", "some-job").counter().count());
+        assertEquals(1d, registry.get("rawdata.converter.csv.failures").tag("job", "some-job").counter().count());
+        assertEquals(2, registry.get("rawdata.converter.csv.stage.duration").tags("job", "some-job", "stage", "parse").timer().count());
+        assertEquals(1, registry.get("rawdata.converter.csv.stage.duration").tags("job", "some-job", "stage", "manifest").timer().count());
+        assertEquals(0, registry.get("rawdata.converter.csv.stage.duration").tags("job", "some-job", "stage", "build").timer().count());
+
+        FunctionTimer intercept = registry.get("rawdata.converter.csv.intercept.duration").tag("job", "some-job").functionTimer();
+        assertEquals(2d, intercept.count());
+    }
+
+    @Test
+    void closedMetrics_shouldBeRemovedFromRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CsvConversionMetrics metrics = new CsvConversionMetrics(registry, "some-job");
+        CsvConversionMetrics otherJobMetrics = new CsvConversionMetrics(registry, "other-job");
+        int otherJobMeters = registry.getMeters().size() / 2;
+
+        metrics.close();
+        assertEquals(otherJobMeters, registry.getMeters().size());
+        assertTrue(registry.find("rawdata.converter.csv.failures").tag("job", "some-job").meters().isEmpty());
+        otherJobMetrics.close();
+        assertTrue(registry.getMeters().isEmpty());
+    }
+
+    @Test
+    void restartedJob_shouldReportInterceptTimeOfNewMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new CsvConversionMetrics(registry, "some-job").timed((field, value) -> value).intercept(new FieldDescriptor("/name"), "a");
+
+        CsvConversionMetrics restarted = new CsvConversionMetrics(registry, "some-job");
+        ValueInterceptor interceptor = restarted.timed((field, value) -> value);
+        interceptor.intercept(new FieldDescriptor("/name"), "a");
+        interceptor.intercept(new FieldDescriptor("/name"), "b");
+
+        assertEquals(2d, registry.get("rawdata.converter.csv.intercept.duration").tag("job", "some-job").functionTimer().count());
+    }
+
+    @Test
+    void failures_shouldBeCountedPerMessage() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setFailureMode(CsvRawdataConverterConfig.FailureMode.QUARANTINE);
+        config.getCsvItems().put("header", "header");
+        config.getCsvItems().put("detail", "detail");
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE,
+          new CsvConversionMetrics(meterRegistry, "test-job"));
+        converter.init(List.of(csvMessage("1", Map.of("header", bytes("1;a\n"), "detail", bytes("2;b\n")), "id:INT", "name")));
+
+        converter.convert(csvMessage("2", Map.of("header", bytes("x;a\n"), "detail", bytes("y;b\n")), "id:INT", "name"));
+        converter.convert(csvMessage("3", Map.of("header", bytes("3;a\n"), "detail", bytes("3;b\n")), "id:INT", "name"));
+        assertEquals(1d, failureCount(meterRegistry));
+
+        converter.convert(csvMessage("4", Map.of("header", bytes("4;a\n"), "detail", bytes("")), "id:INT", "name"));
+        assertEquals(2d, failureCount(meterRegistry));
+    }
+
+    @Test
+    void droppedColumns_shouldBeCountedPerConvertedItem() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CsvRawdataConverter converter = new CsvRawdataConverter(csvConfig(), new ValueInterceptorChain(), FieldPathMatcher.NONE,
+          new CsvConversionMetrics(meterRegistry, "test-job"));
+        converter.init(List.of(csvMessage("1", "1;a\n", "id:INT", "name")));
+
+        converter.convert(csvMessage("2", "2;b\n", "id:INT", "name"));
+        converter.convert(csvMessage("3", "x;c;d\n", "id", "name", "zip"));
+        converter.convert(csvMessage("4", "y;e;f\n", "id", "name", "zip"));
+        assertEquals(4d, meterRegistry.get("rawdata.converter.csv.columns.dropped").tag("job", "test-job").counter().count());
+    }
+
+    private static double failureCount(SimpleMeterRegistry meterRegistry) {
+        return meterRegistry.get("rawdata.converter.csv.failures").tag("job", "test-job").counter().count();
+    }
+
+}
@@ -0,0 +1,133 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.rawdata.converter.app.csv.CsvConversionPlan;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.RecordType;
+import no.ssb.rawdata.converter.app.csv.schema.FieldInfo;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CsvConversionPlanTest {
+
+    private static final CsvSchemaAdapter TARGET_SCHEMA = CsvSchemaAdapter.of(List.of(
+      FieldInfo.optionalString("name"),
+      FieldInfo.optionalInt("age"),
+      FieldInfo.optionalString("city")
+    ), RecordType.COLLECTION);
+
+    private static CsvRawdataConverterConfig byteTokenizerConfig() {
+        CsvRawdataConverterConfig config = new CsvRawdataConverterConfig();
+        config.getCsvSettings().put(CsvParserSettings.DELIMITERS, ";");
+        config.setTokenizer(CsvRawdataConverterConfig.Tokenizer.BYTE);
+        return config;
+    }
+
+    @Test
+    void sameColumns_shouldNotBeMapped() {
+        CsvConversionPlan plan = CsvConversionPlan.of(byteTokenizerConfig(), TARGET_SCHEMA, List.of("name", "age", "city"), FieldPathMatcher.NONE);
+        assertFalse(plan.isMapped());
+    }
+
+    @Test
+    void namespacedSchema_shouldKeepNamespaceWhenMapped() {
+        CsvSchemaAdapter detailSchema = TARGET_SCHEMA.withNamespace("detail");
+        CsvConversionPlan plan = CsvConversionPlan.of(byteTokenizerConfig(), detailSchema, List.of("age", "name"), FieldPathMatcher.NONE);
+        assertEquals("detail.item", plan.getParseItemSchema().getFullName());
+        assertEquals("detail.root", plan.getCsvSchema().getTargetSchema().getFullName());
+        assertEquals("item", TARGET_SCHEMA.getItemSchema().getFullName());
+    }
+
+    @Test
+    void driftedColumns_shouldBeMappedIntoTargetSchema() {
+        CsvConversionPlan plan = CsvConversionPlan.of(byteTokenizerConfig(), TARGET_SCHEMA, List.of("age", "zip", "name"), FieldPathMatcher.ALL);
+        assertTrue(plan.isMapped());
+        assertEquals(List.of("age", "zip", "name"), plan.getHeaders());
+        assertEquals(Set.of("age", "name"), plan.getInterceptedColumnNames());
+        assertEquals(List.of(), plan.getDroppedColumns());
+
+        List<GenericRecord> items = new ArrayList<>();
+        byte[] data = "42;0150;Ola\n".getBytes(StandardCharsets.UTF_8);
+        plan.byteTokenizer().tokenize(data, 0, data.length, plan.newRecordAssembler(true, (field, value) -> value, items::add));
+
+        assertEquals(1, items.size());
+        GenericRecord item = items.get(0);
+        assertEquals(TARGET_SCHEMA.getItemSchema(), item.getSchema());
+        assertEquals("Ola", item.get("name"));
+        assertEquals(42, item.get("age"));
+        assertNull(item.get("city"));
+    }
+
+    @Test
+    void unknownColumns_shouldBeDropped() {
+        List<FieldInfo> jobColumns = TARGET_SCHEMA.getFields();
+        List<FieldInfo> columns = List.of(FieldInfo.optionalString("name"), FieldInfo.optionalString("zip"), FieldInfo.optionalInt("age"));
+        CsvConversionPlan plan = CsvConversionPlan.of(byteTokenizerConfig(), TARGET_SCHEMA, columns, jobColumns, FieldPathMatcher.NONE);
+        assertEquals(List.of("zip"), plan.getDroppedColumns());
+    }
+
+    @Test
+    void changedDataType_shouldBeDroppedUnlessTargetFieldCanHoldIt() {
+        CsvSchemaAdapter targetSchema = CsvSchemaAdapter.of(List.of(
+          FieldInfo.optionalString("name"),
+          FieldInfo.optionalInt("age"),
+          FieldInfo.optionalLong("count")
+        ), RecordType.COLLECTION);
+        List<FieldInfo> columns = List.of(FieldInfo.optionalInt("name"), FieldInfo.optionalString("age"), FieldInfo.optionalInt("count"));
+        CsvConversionPlan plan = CsvConversionPlan.of(byteTokenizerConfig(), targetSchema, columns, targetSchema.getFields(), FieldPathMatcher.NONE);
+        assertEquals(List.of("age"), plan.getDroppedColumns());
+        assertTrue(plan.isMapped());
+
+        List<GenericRecord> items = new ArrayList<>();
+        byte[] data = "42;x;7\n".getBytes(StandardCharsets.UTF_8);
+        plan.byteTokenizer().tokenize(data, 0, data.length, plan.newRecordAssembler(true, (field, value) -> value, items::add));
+        assertEquals("42", items.get(0).get("name"));
+        assertNull(items.get(0).get("age"));
+        assertEquals(7L, items.get(0).get("count"));
+    }
+
+    @Test
+    void projectedColumns_shouldBeSkipped() {
+        CsvSchemaAdapter projected = TARGET_SCHEMA.select(List.of(), List.of("age"));
+        assertEquals(List.of("name", "city"), projected.getHeaders());
+        assertEquals(List.of("city"), TARGET_SCHEMA.select(List.of("city", "unknown"), List.of()).getHeaders());
+
+        CsvConversionPlan plan = CsvConversionPlan.of(byteTokenizerConfig(), projected, TARGET_SCHEMA.getHeaders(), FieldPathMatcher.NONE);
+        List<GenericRecord> items = new ArrayList<>();
+        byte[] data = "Ola;42;Oslo\nKari;x;Bergen\n".getBytes(StandardCharsets.UTF_8);
+        plan.byteTokenizer().tokenize(data, 0, data.length, plan.newRecordAssembler(true, (field, value) -> value, items::add));
+
+        assertEquals(2, items.size());
+        assertEquals(projected.getItemSchema(), items.get(1).getSchema());
+        assertEquals("Kari", items.get(1).get("name"));
+        assertEquals("Bergen", items.get(1).get("city"));
+    }
+
+    @Test
+    void remapping_shouldPlaceParsedValuesInTargetFields() {
+        CsvConversionPlan plan = CsvConversionPlan.of(new CsvRawdataConverterConfig(), TARGET_SCHEMA, List.of("city", "name"), FieldPathMatcher.NONE);
+        GenericData.Record parsed = new GenericData.Record(plan.getParseItemSchema());
+        parsed.put(0, "Oslo");
+        parsed.put(1, "Kari");
+
+        List<GenericRecord> items = new ArrayList<>();
+        plan.remapping(items::add).accept(parsed);
+        assertEquals("Kari", items.get(0).get("name"));
+        assertEquals("Oslo", items.get(0).get("city"));
+        assertNull(items.get(0).get("age"));
+    }
+
+}
@@ -0,0 +1,31 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvConfig;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CsvPreValidatorTest {
+
+    @Test
+    void preCheck_shouldNotFailOnMissingConversionPlan() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setMaxSchemaVersions(1);
+        config.setStrictColumnCount(true);
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("1", "1;a\n", "id", "name")));
+
+        assertTrue(converter.isConvertible(csvMessage("2", "1;a;b\n", "id", "name", "other")));
+        assertFalse(converter.isConvertible(csvMessage("3", "1;a;b\n", "id", "name")));
+        assertFalse(converter.isConvertible(csvMessage("4", "", "id", "name")));
+    }
+
+}
@@ -1,29 +1,40 @@
 package no.ssb.rawdata.converter;
 
 import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.rawdata.api.RawdataMessage;
 import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
 import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvDataException;
 import no.ssb.rawdata.converter.core.convert.ConversionResult;
 import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
 import no.ssb.rawdata.converter.test.message.RawdataMessageFixtures;
 import no.ssb.rawdata.converter.test.message.RawdataMessages;
-import org.junit.jupiter.api.BeforeAll;
+import org.apache.avro.generic.GenericRecord;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
-@Disabled
-public class CsvRawdataConverterTest {
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
-    static RawdataMessageFixtures fixtures;
+import static no.ssb.rawdata.converter.CsvTestFixtures.bytes;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvConfig;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static no.ssb.rawdata.converter.CsvTestFixtures.items;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-    @BeforeAll
-    static void loadFixtures() {
-        fixtures = RawdataMessageFixtures.init("private");
-    }
+public class CsvRawdataConverterTest {
 
     @Disabled
     @Test
     void shouldConvertRawdataMessages() {
+        RawdataMessageFixtures fixtures = RawdataMessageFixtures.init("private");
         RawdataMessages messages = fixtures.rawdataMessages("private");
         CsvRawdataConverterConfig config = new CsvRawdataConverterConfig();
         config.getCsvSettings().put(CsvParserSettings.DELIMITERS, ";");
@@ -34,4 +45,124 @@ public class CsvRawdataConverterTest {
         ConversionResult res = converter.convert(messages.index().get("0177199c-150d-0000-0000-000000000002"));
     }
 
+    @Test
+    void badData_shouldFailWithoutStackTrace() {
+        CsvRawdataConverter converter = new CsvRawdataConverter(csvConfig(), new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("1", "1;a\n", "id:INT", "name")));
+
+        CsvDataException e = assertThrows(CsvDataException.class, () -> converter.convert(csvMessage("2", "x;a\n", "id:INT", "name")));
+        assertTrue(e.getMessage().contains("Unable to decode 'x'"), e.getMessage());
+        assertEquals(0, e.getStackTrace().length);
+        assertNull(e.getCause());
+    }
+
+    private static CsvRawdataConverterConfig quarantiningConfig() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setFailureMode(CsvRawdataConverterConfig.FailureMode.QUARANTINE);
+        return config;
+    }
+
+    private static List<GenericRecord> failures(ConversionResult result) {
+        GenericRecord error = (GenericRecord) result.getGenericRecord().get("error");
+        return (error == null) ? List.of() : (List<GenericRecord>) error.get("failures");
+    }
+
+    @Test
+    void quarantine_shouldRecordEveryFailedItem() {
+        CsvRawdataConverterConfig config = quarantiningConfig();
+        config.getCsvItems().put("entry", "data");
+        config.getCsvItems().put("detail", "detail");
+        config.getCsvItems().put("summary", "summary");
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("1", Map.of(
+          "entry", bytes("1;a\n"), "detail", bytes("2;b\n"), "summary", bytes("3;c\n")), "id:INT", "name")));
+
+        RawdataMessage message = csvMessage("2", Map.of(
+          "entry", bytes("x;a\n"), "detail", bytes(""), "summary", bytes("3;c\n")), "id:INT", "name");
+        assertTrue(converter.isConvertible(message));
+        ConversionResult result = converter.convert(message);
+
+        assertTrue(result.getFailures().isEmpty());
+        List<GenericRecord> failures = failures(result);
+        assertEquals(2, failures.size());
+        assertEquals("entry", failures.get(0).get("item").toString());
+        assertEquals("detail", failures.get(1).get("item").toString());
+        assertEquals("CsvDataException", failures.get(1).get("type").toString());
+        assertEquals(3, items(result, "summary").get(0).get("id"));
+        assertNull(result.getGenericRecord().get("data"));
+    }
+
+    @Test
+    void quarantine_shouldRecordItemsWithoutConversionPlan() {
+        CsvRawdataConverterConfig config = quarantiningConfig();
+        config.setMaxSchemaVersions(1);
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("1", "1;a\n", "id", "name")));
+
+        ConversionResult result = converter.convert(csvMessage("2", "1;a;b\n", "id", "name", "other"));
+
+        assertTrue(result.getFailures().isEmpty());
+        List<GenericRecord> failures = failures(result);
+        assertEquals(1, failures.size());
+        assertEquals("entry", failures.get(0).get("item").toString());
+    }
+
+    @Test
+    void convertAll_shouldPreserveOrderOfMessages() {
+        CsvRawdataConverter converter = new CsvRawdataConverter(csvConfig(), new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("0", "0;a\n", "id:INT", "name")));
+
+        List<RawdataMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            messages.add(csvMessage(String.valueOf(i), i + ";a\n" + i + ";b\n", "id:INT", "name"));
+        }
+        List<ConversionResult> results = converter.convertAll(messages);
+
+        assertEquals(messages.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).getFailures().isEmpty());
+            assertEquals(i, items(results.get(i)).get(0).get("id"));
+        }
+    }
+
+    @Test
+    void convertAll_shouldIsolateFailingMessages() {
+        CsvRawdataConverter converter = new CsvRawdataConverter(csvConfig(), new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("0", "0;a\n", "id:INT", "name")));
+
+        List<ConversionResult> results = converter.convertAll(List.of(
+          csvMessage("1", "1;a\n", "id:INT", "name"),
+          csvMessage("2", "x;b\n", "id:INT", "name"),
+          csvMessage("3", "3;c\n", "id:INT", "name")
+        ));
+
+        assertTrue(results.get(0).getFailures().isEmpty());
+        assertFalse(results.get(1).getFailures().isEmpty());
+        assertTrue(results.get(2).getFailures().isEmpty());
+        assertEquals(1, items(results.get(0)).get(0).get("id"));
+        assertEquals(3, items(results.get(2)).get(0).get("id"));
+    }
+
+    @Test
+    void multipleCsvItems_shouldBeConvertedIntoTheirTargetFields() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.getCsvItems().put("header", "header");
+        config.getCsvItems().put("detail", "detail");
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("1", Map.of("header", bytes("1;a\n"), "detail", bytes("2;b\n")), "id:INT", "name")));
+
+        ConversionResult result = converter.convert(csvMessage("2", Map.of(
+          "header", bytes("1;h\n"),
+          "detail", bytes("1;d1\n2;d2\n3;d3\n")), "id:INT", "name"));
+
+        assertTrue(result.getFailures().isEmpty());
+        List<GenericRecord> header = items(result, "header");
+        List<GenericRecord> detail = items(result, "detail");
+        assertEquals(1, header.size());
+        assertEquals("h", header.get(0).get("name").toString());
+        assertEquals(3, detail.size());
+        assertEquals("d3", detail.get(2).get("name").toString());
+        assertNotEquals(header.get(0).getSchema().getFullName(), detail.get(0).getSchema().getFullName());
+    }
+
 }
@@ -0,0 +1,97 @@
+package no.ssb.rawdata.converter;
+
+import de.huxhorn.sulky.ulid.ULID;
+import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.core.convert.ConversionResult;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Synthetic csv rawdata messages and converter config for tests
+ */
+final class CsvTestFixtures {
+
+    private static final ULID ULID = new ULID();
+
+    private CsvTestFixtures() {}
+
+    /**
+     * @return a converter config for semicolon delimited csv data without headers, using the byte tokenizer
+     */
+    static CsvRawdataConverterConfig csvConfig() {
+        CsvRawdataConverterConfig config = new CsvRawdataConverterConfig();
+        config.getCsvSettings().put(CsvParserSettings.DELIMITERS, ";");
+        config.getCsvSettings().put(CsvParserSettings.COLUMN_HEADERS_PRESENT, false);
+        config.setTokenizer(CsvRawdataConverterConfig.Tokenizer.BYTE);
+        return config;
+    }
+
+    static RawdataMessage csvMessage(String position, String csv, String... columns) {
+        return csvMessage(position, bytes(csv), columns);
+    }
+
+    static RawdataMessage csvMessage(String position, byte[] entry, String... columns) {
+        return csvMessage(position, Map.of("entry", entry), columns);
+    }
+
+    /**
+     * @param columns the column names of the csv items, optionally with a data type, e.g. <code>id:INT</code>
+     */
+    static RawdataMessage csvMessage(String position, Map<String, byte[]> csvItems, String... columns) {
+        StringBuilder fields = new StringBuilder();
+        for (String column : columns) {
+            String[] nameAndType = column.split(":");
+            fields.append(fields.length() > 0 ? "," : "")
+              .append("{\"name\":\"").append(nameAndType[0])
+              .append("\",\"mapped-name\":\"").append(nameAndType[0])
+              .append("\",\"data-type\":\"").append(nameAndType.length > 1 ? nameAndType[1] : "STRING").append("\"}");
+        }
+        StringJoiner manifestJson = new StringJoiner(",", "[", "]");
+        for (String itemName : csvItems.keySet()) {
+            manifestJson.add("{\"metadata\":{\"topic\":\"test\",\"position\":\"" + position + "\","
+              + "\"resource-type\":\"" + itemName + "\",\"content-type\":\"text/csv\"},"
+              + "\"schema\":{\"type\":\"csv\",\"record-type\":\"collection\",\"delimiter\":\";\",\"fields\":[" + fields + "]}}");
+        }
+
+        RawdataMessage.Builder message = RawdataMessage.builder()
+          .ulid(ULID.nextValue())
+          .position(position);
+        csvItems.forEach(message::put);
+        return message
+          .put("manifest.json", manifestJson.toString().getBytes(StandardCharsets.UTF_8))
+          .build();
+    }
+
+    static byte[] bytes(String csv) {
+        return csv.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] gzip(String csv) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(csv.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @return the converted csv lines of the <code>data</code> field
+     */
+    static List<GenericRecord> items(ConversionResult result) {
+        return items(result, "data");
+    }
+
+    static List<GenericRecord> items(ConversionResult result, String fieldName) {
+        return (List<GenericRecord>) ((GenericRecord) result.getGenericRecord().get(fieldName)).get("elements");
+    }
+
+}
@@ -0,0 +1,106 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.avro.convert.csv.CsvParserSettings;
+import no.ssb.avro.convert.csv.CsvToRecords;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvSchemaException;
+import no.ssb.rawdata.converter.app.csv.schema.DataType;
+import no.ssb.rawdata.converter.app.csv.schema.FieldDecoder;
+import no.ssb.rawdata.converter.app.csv.schema.FieldDecoders;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FieldDecodersTest {
+
+    @Test
+    void shouldDecodeInts() {
+        assertEquals(42, FieldDecoders.INT.decode("42"));
+        assertEquals(-7, FieldDecoders.INT.decode(" -7 "));
+        assertEquals(Integer.MIN_VALUE, FieldDecoders.INT.decode("-2147483648"));
+        assertEquals(123, FieldDecoders.INT.decode("a;123;b", 2, 5));
+        assertNull(FieldDecoders.INT.decode(""));
+        assertThrows(CsvSchemaException.class, () -> FieldDecoders.INT.decode("2147483648"));
+        assertThrows(CsvSchemaException.class, () -> FieldDecoders.INT.decode("12a"));
+        assertEquals(0, assertThrows(CsvSchemaException.class, () -> FieldDecoders.INT.decode("12a")).getStackTrace().length);
+    }
+
+    @Test
+    void shouldDecodeLongs() {
+        assertEquals(Long.MAX_VALUE, FieldDecoders.LONG.decode("9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, FieldDecoders.LONG.decode("-9223372036854775808"));
+        assertThrows(CsvSchemaException.class, () -> FieldDecoders.LONG.decode("9223372036854775808"));
+        assertThrows(CsvSchemaException.class, () -> FieldDecoders.LONG.decode("-"));
+    }
+
+    @Test
+    void shouldDecodeDoubles() {
+        for (String s : new String[] {"0", "1.5", "-0.05", "+12.25", "3.14159", ".5", "1e5", "1.25E-3", "0.1", "123456789012.345", "1.7976931348623157E308", "4.9E-324", "1234567890123456789", "1.", "-1e+3"}) {
+            assertEquals(Double.parseDouble(s), FieldDecoders.DOUBLE.decode(s), s);
+        }
+        assertNull(FieldDecoders.DOUBLE.decode("  "));
+        assertThrows(CsvSchemaException.class, () -> FieldDecoders.DOUBLE.decode("1,5"));
+        assertThrows(CsvSchemaException.class, () -> FieldDecoders.DOUBLE.decode("1.2.3"));
+    }
+
+    @Test
+    void javaLiteralForms_shouldNotDecodeAsDoubles() {
+        for (String s : new String[] {"12F", "1d", "10D", "3f", "0x1p3", "NaN", "-Infinity", "1e 5", "1e", "1e+", "e5", ".", "-", "1234567890123456789F"}) {
+            assertThrows(CsvSchemaException.class, () -> FieldDecoders.DOUBLE.decode(s), s);
+        }
+    }
+
+    @Test
+    void shouldDecodeBooleans() {
+        assertEquals(true, FieldDecoders.BOOLEAN.decode("TRUE"));
+        assertEquals(false, FieldDecoders.BOOLEAN.decode("false"));
+        assertEquals(false, FieldDecoders.BOOLEAN.decode("yes"));
+        assertNull(FieldDecoders.BOOLEAN.decode(""));
+    }
+
+    @Test
+    void shouldResolveDecoderByDataType() {
+        assertEquals(FieldDecoders.DOUBLE, FieldDecoders.of(DataType.DOUBLE));
+        assertEquals(FieldDecoders.STRING, FieldDecoders.of(DataType.STRING));
+        assertEquals("x", FieldDecoders.of(null).decode("x"));
+    }
+
+    @Test
+    void decoders_shouldDecodeLikeDefaultParser() throws Exception {
+        Schema schema = SchemaBuilder.record("item").fields()
+          .optionalInt("i")
+          .optionalLong("l")
+          .optionalDouble("d")
+          .optionalBoolean("b")
+          .endRecord();
+        FieldDecoder[] decoders = {FieldDecoders.INT, FieldDecoders.LONG, FieldDecoders.DOUBLE, FieldDecoders.BOOLEAN};
+        String csv = "42;12345678901;1.5;true\n"
+          + "-7;-9223372036854775808;-2.5e3;false\n"
+          + "0;0;0.1;TRUE\n"
+          + "2147483647;9223372036854775807;123456789012.345;False\n";
+
+        CsvParserSettings parserSettings = new CsvParserSettings().configure(Map.of(CsvParserSettings.DELIMITERS, ";", CsvParserSettings.COLUMN_HEADERS_PRESENT, false));
+        parserSettings.headers(List.of("i", "l", "d", "b"));
+        List<String> lines = List.of(csv.split("\n"));
+        int row = 0;
+        try (CsvToRecords records = new CsvToRecords(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), schema, parserSettings)) {
+            for (GenericRecord parsed : records) {
+                String[] values = lines.get(row++).split(";");
+                for (int i = 0; i < decoders.length; i++) {
+                    assertEquals(parsed.get(i), decoders[i].decode(values[i]), values[i]);
+                }
+            }
+        }
+        assertEquals(lines.size(), row);
+    }
+
+}
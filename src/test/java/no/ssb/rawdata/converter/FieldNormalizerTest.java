@@ -0,0 +1,47 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter.CsvRawdataConverterException;
+import no.ssb.rawdata.converter.app.csv.FieldNormalizer.Rule;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FieldNormalizerTest {
+
+    private static final Rule ALL = Rule.parse("replace-control, collapse-whitespace, trim");
+
+    @Test
+    void normalizedValue_shouldReturnSameInstance() {
+        String value = new String("Kiwi Storo");
+        assertSame(value, ALL.apply(value));
+        assertSame(value, Rule.parse("strip-control").apply(value));
+        assertSame(value, Rule.parse("collapse-whitespace").apply(value));
+
+        String trailingSpace = new String("Kiwi Storo ");
+        assertSame(trailingSpace, Rule.parse("collapse-whitespace").apply(trailingSpace));
+        assertEquals("Kiwi Storo", ALL.apply(trailingSpace));
+    }
+
+    @Test
+    void allOptions_shouldNormalizeInOnePass() {
+        assertEquals("Kiwi Storo", ALL.apply("  Kiwi\t\n Storo\r\n"));
+        assertEquals("Kiwi Storo", ALL.apply("Kiwi Storo"));
+        assertEquals("Kiwi", ALL.apply("Kiwi  "));
+        assertEquals("", ALL.apply(" \n "));
+    }
+
+    @Test
+    void stripControl_shouldRemoveControlCharacters() {
+        assertEquals("KiwiStoro ", Rule.parse("strip-control").apply("Kiwi\nStoro\t "));
+        assertEquals("Kiwi Storo", Rule.parse("strip-control,collapse-whitespace").apply("Kiwi \n Storo"));
+    }
+
+    @Test
+    void invalidOptions_shouldFail() {
+        assertThrows(CsvRawdataConverterException.class, () -> Rule.parse("trim,lowercase"));
+        assertThrows(CsvRawdataConverterException.class, () -> Rule.parse("strip-control,replace-control"));
+    }
+
+}
@@ -0,0 +1,55 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvConfig;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ManifestBuilderTest {
+
+    @Test
+    void manifest_shouldBypassInterceptorsWhenNoRuleMatchesIt() {
+        assertEquals(Set.of("/fnr"), interceptedPaths(FieldPathMatcher.of(List.of("/fnr"))));
+    }
+
+    @Test
+    void manifest_shouldPassThroughInterceptorsWhenRulesMatchIt() {
+        Set<String> paths = interceptedPaths(FieldPathMatcher.ALL);
+        paths.removeAll(Set.of("/id", "/fnr"));
+        assertFalse(paths.isEmpty());
+    }
+
+    @Test
+    void manifest_shouldPassThroughInterceptorsWhenRuleMatchesManifestField() {
+        Set<String> paths = interceptedPaths(FieldPathMatcher.of(List.of("**/position")));
+        assertTrue(paths.stream().anyMatch(path -> path.endsWith("/position")), paths.toString());
+        assertFalse(paths.contains("/fnr"));
+    }
+
+    private static Set<String> interceptedPaths(FieldPathMatcher interceptedFields) {
+        Set<String> paths = ConcurrentHashMap.newKeySet();
+        ValueInterceptorChain valueInterceptorChain = new ValueInterceptorChain();
+        valueInterceptorChain.register((field, value) -> {
+            paths.add(field.getPath());
+            return value;
+        });
+        CsvRawdataConverter converter = new CsvRawdataConverter(csvConfig(), valueInterceptorChain, interceptedFields);
+        RawdataMessage message = csvMessage("1", "1;12017012345\n", "id", "fnr");
+        converter.init(List.of(message));
+        paths.clear();
+        assertTrue(converter.convert(message).getFailures().isEmpty());
+        return paths;
+    }
+
+}
@@ -0,0 +1,106 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.api.RawdataMessage;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverter;
+import no.ssb.rawdata.converter.app.csv.CsvRawdataConverterConfig;
+import no.ssb.rawdata.converter.app.csv.FieldPathMatcher;
+import no.ssb.rawdata.converter.app.csv.schema.CsvSchemaAdapter.CsvDataException;
+import no.ssb.rawdata.converter.core.convert.ConversionResult;
+import no.ssb.rawdata.converter.core.convert.ValueInterceptorChain;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvConfig;
+import static no.ssb.rawdata.converter.CsvTestFixtures.csvMessage;
+import static no.ssb.rawdata.converter.CsvTestFixtures.gzip;
+import static no.ssb.rawdata.converter.CsvTestFixtures.items;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SampleSchemaInferenceTest {
+
+    private static Schema.Type typeOf(Schema itemSchema, String field) {
+        Schema schema = itemSchema.getField(field).schema();
+        return (schema.getType() == Schema.Type.UNION) ? schema.getTypes().get(1).getType() : schema.getType();
+    }
+
+    @Test
+    void schemaInference_shouldKeepDeclaredTypeOfInterceptedColumns() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setSchemaInference(CsvRawdataConverterConfig.SchemaInference.TYPES_AND_NULLABILITY);
+        ValueInterceptorChain valueInterceptorChain = new ValueInterceptorChain();
+        valueInterceptorChain.register((field, value) -> "fnr".equals(field.getName()) ? "pseudo-" + value : value);
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, valueInterceptorChain, FieldPathMatcher.of(List.of("/fnr")));
+
+        RawdataMessage sample = csvMessage("1", "1;12017012345\n2;22027012345\n", "id", "fnr");
+        converter.init(List.of(sample));
+        ConversionResult result = converter.convert(sample);
+
+        assertTrue(result.getFailures().isEmpty());
+        List<GenericRecord> items = items(result);
+        Schema itemSchema = items.get(0).getSchema();
+        assertEquals(Schema.Type.INT, itemSchema.getField("id").schema().getType());
+        assertEquals(Schema.Type.UNION, itemSchema.getField("fnr").schema().getType());
+        assertEquals(Schema.Type.STRING, typeOf(itemSchema, "fnr"));
+        assertEquals("pseudo-12017012345", items.get(0).get("fnr").toString());
+    }
+
+    @Test
+    void schemaInference_shouldDecompressSamples() throws IOException {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setSchemaInference(CsvRawdataConverterConfig.SchemaInference.TYPES);
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+
+        RawdataMessage sample = csvMessage("1", gzip("1;1.5;a\n2;2.5;b\n"), "id", "amount", "name");
+        converter.init(List.of(sample));
+        ConversionResult result = converter.convert(sample);
+
+        assertTrue(result.getFailures().isEmpty());
+        List<GenericRecord> items = items(result);
+        Schema itemSchema = items.get(0).getSchema();
+        assertEquals(Schema.Type.INT, typeOf(itemSchema, "id"));
+        assertEquals(Schema.Type.DOUBLE, typeOf(itemSchema, "amount"));
+        assertEquals(Schema.Type.STRING, typeOf(itemSchema, "name"));
+        assertEquals(2, items.get(1).get("id"));
+    }
+
+    @Test
+    void samplesOfOtherVersions_shouldBeSkipped() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setSchemaInference(CsvRawdataConverterConfig.SchemaInference.TYPES);
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+
+        RawdataMessage sample = csvMessage("1", "1;a\n2;b\n", "id", "name");
+        converter.init(List.of(sample, csvMessage("2", "c;3\n", "name", "id")));
+        ConversionResult result = converter.convert(sample);
+
+        assertTrue(result.getFailures().isEmpty());
+        Schema itemSchema = items(result).get(0).getSchema();
+        assertEquals(Schema.Type.INT, typeOf(itemSchema, "id"));
+        assertEquals(Schema.Type.STRING, typeOf(itemSchema, "name"));
+    }
+
+    @Test
+    void missingValueOfRequiredField_shouldFailConversion() {
+        CsvRawdataConverterConfig config = csvConfig();
+        config.setSchemaInference(CsvRawdataConverterConfig.SchemaInference.TYPES_AND_NULLABILITY);
+        CsvRawdataConverter converter = new CsvRawdataConverter(config, new ValueInterceptorChain(), FieldPathMatcher.NONE);
+        converter.init(List.of(csvMessage("1", "1;a\n2;b\n", "id", "name")));
+
+        RawdataMessage missingId = csvMessage("2", "3;c\n;d\n", "id", "name");
+        ConversionResult result = converter.convertAll(List.of(missingId)).get(0);
+
+        assertFalse(result.getFailures().isEmpty());
+        Throwable cause = result.getFailures().get(0);
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        assertTrue(cause instanceof CsvDataException, cause.toString());
+    }
+
+}
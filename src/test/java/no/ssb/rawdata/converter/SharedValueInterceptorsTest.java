@@ -0,0 +1,112 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.avro.convert.core.FieldDescriptor;
+import no.ssb.avro.convert.core.ValueInterceptor;
+import no.ssb.rawdata.converter.app.csv.SharedValueInterceptors;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedValueInterceptorsTest {
+
+    @Test
+    void sameConfig_shouldShareInterceptor() {
+        SharedValueInterceptors shared = new SharedValueInterceptors();
+        AtomicInteger created = new AtomicInteger();
+        Supplier<ValueInterceptor> factory = () -> {
+            created.incrementAndGet();
+            return (field, value) -> "pseudo-" + value;
+        };
+
+        SharedValueInterceptors.Lease job1 = shared.acquire(List.of(List.of("**/fnr", "fpe-fnr(secret1)")), factory);
+        SharedValueInterceptors.Lease job2 = shared.acquire(List.of(List.of("**/fnr", "fpe-fnr(secret1)")), factory);
+        SharedValueInterceptors.Lease job3 = shared.acquire(List.of(List.of("**/fnr", "fpe-fnr(secret2)")), factory);
+
+        assertTrue(job1.isSharedWith(job2));
+        assertFalse(job1.isSharedWith(job3));
+        assertEquals(2, created.get());
+        assertEquals(2, shared.size());
+        assertEquals("pseudo-1", job2.intercept(new FieldDescriptor("/fnr"), "1"));
+    }
+
+    @Test
+    void lastJobStopping_shouldReleaseInterceptor() {
+        SharedValueInterceptors shared = new SharedValueInterceptors();
+        AtomicInteger created = new AtomicInteger();
+        Supplier<ValueInterceptor> factory = () -> {
+            created.incrementAndGet();
+            return (field, value) -> value;
+        };
+
+        SharedValueInterceptors.Lease job1 = shared.acquire("rules", factory);
+        SharedValueInterceptors.Lease job2 = shared.acquire("rules", factory);
+        job1.close();
+        job1.close();
+        assertEquals(1, shared.size());
+
+        job2.close();
+        assertEquals(0, shared.size());
+
+        SharedValueInterceptors.Lease job3 = shared.acquire("rules", factory);
+        assertFalse(job3.isSharedWith(job2));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void concurrentUse_shouldNeverCallInterceptorFromSeveralThreadsAtOnce() throws Exception {
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicInteger created = new AtomicInteger();
+        SharedValueInterceptors.Lease lease = new SharedValueInterceptors().acquire("rules", () -> {
+            created.incrementAndGet();
+            AtomicBoolean inUse = new AtomicBoolean();
+            return (field, value) -> {
+                if (! inUse.compareAndSet(false, true)) {
+                    overlapped.set(true);
+                }
+                try {
+                    Thread.onSpinWait();
+                    return "pseudo-" + value;
+                }
+                finally {
+                    inUse.set(false);
+                }
+            };
+        });
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    boolean correct = true;
+                    for (int i = 0; i < 10_000; i++) {
+                        correct &= ("pseudo-" + i).equals(lease.intercept(new FieldDescriptor("/fnr"), String.valueOf(i)));
+                    }
+                    return correct;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertFalse(overlapped.get());
+        assertEquals(1, created.get());
+    }
+
+}
@@ -0,0 +1,52 @@
+package no.ssb.rawdata.converter;
+
+import no.ssb.rawdata.converter.app.csv.parse.StringDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StringDictionaryTest {
+
+    private static String get(StringDictionary dictionary, String csv, int offset, int length) {
+        return dictionary.get(csv.getBytes(StandardCharsets.UTF_8), offset, length, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void repeatedValues_shouldShareInstance() {
+        StringDictionary dictionary = new StringDictionary(10, false);
+        String oslo = get(dictionary, "Oslo;Bærum", 0, 4);
+        String baerum = get(dictionary, "Oslo;Bærum", 5, 6);
+        assertEquals("Oslo", oslo);
+        assertEquals("Bærum", baerum);
+        assertSame(oslo, get(dictionary, "x;Oslo", 2, 4));
+        assertSame(baerum, get(dictionary, "Bærum", 0, 6));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    void fullDictionary_shouldKeepExistingValues() {
+        StringDictionary dictionary = new StringDictionary(2, false);
+        String a = get(dictionary, "a", 0, 1);
+        get(dictionary, "b", 0, 1);
+        assertNotSame(get(dictionary, "c", 0, 1), get(dictionary, "c", 0, 1));
+        assertSame(a, get(dictionary, "a", 0, 1));
+        assertTrue(dictionary.isEnabled());
+    }
+
+    @Test
+    void fullAdaptiveDictionary_shouldBeDisabled() {
+        StringDictionary dictionary = new StringDictionary(2, true);
+        get(dictionary, "a", 0, 1);
+        get(dictionary, "b", 0, 1);
+        assertEquals("c", get(dictionary, "c", 0, 1));
+        assertFalse(dictionary.isEnabled());
+        assertNotSame(get(dictionary, "a", 0, 1), get(dictionary, "a", 0, 1));
+    }
+
+}